@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /* Extra Credit Only */
@@ -14,6 +16,15 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         alphabet = chars;
+        char max = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            max = (char) Math.max(max, chars.charAt(i));
+        }
+        _index = new int[max + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < chars.length(); i++) {
+            _index[chars.charAt(i)] = i;
+        }
     }
 
     /** Returns the size of the alphabet. */
@@ -23,7 +34,7 @@ class Alphabet {
 
     /** Returns true if C is in this alphabet. */
     boolean contains(char c) {
-        return alphabet.contains(Character.toString(c));
+        return c < _index.length && _index[c] >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -34,9 +45,13 @@ class Alphabet {
 
     /** Returns the index of character C, which must be in the alphabet. */
     int toInt(char c) {
-        return alphabet.indexOf(c);
+        return c < _index.length ? _index[c] : -1;
     }
 
     /** Variable to keep track of alphabet. */
     private String alphabet;
+
+    /** Index of each character in alphabet, or -1 for characters not in
+     *  it, up to the largest character in it. */
+    private int[] _index;
 }
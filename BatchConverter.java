@@ -0,0 +1,166 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Converter of many messages, each under a setting of its own, for
+ *  programs that use the machine as a library.  Rather than set up one
+ *  machine afresh for every message, the converter groups the messages
+ *  by rotor order and by the positions of the rotors that never move,
+ *  which together fix everything a machine prepares when its rotors are
+ *  inserted.  Within a group, each message then costs only a change of
+ *  plugboard and of the positions of the moving rotors.  Groups are cut
+ *  into runs of at most CHUNK messages, which are converted on all
+ *  processors, each thread with machines of its own made from one
+ *  shared Config.
+ *  @author Josh Rubin
+ */
+class BatchConverter {
+
+    /** Largest number of messages converted as one piece of work. */
+    static final int CHUNK = 256;
+
+    /** A converter for machines of CONFIG. */
+    BatchConverter(Config config) {
+        _config = config;
+        _firstMoving = config.numRotors() - config.numPawls();
+        for (Rotor rotor : config.newMachine().allRotors()) {
+            _names.add(rotor.name().toUpperCase());
+        }
+        _machines = ThreadLocal.withInitial(() -> {
+            Machine machine = config.newMachine();
+            machine.setEngine(Machine.Engine.KERNEL);
+            return machine;
+        });
+    }
+
+    /** Return the conversions of MESSAGES, each converted by a machine
+     *  set up by the setting at the same index of SETTINGS.  The
+     *  characters of each message must all be in the alphabet. */
+    String[] convert(Setting[] settings, String[] messages) {
+        if (settings.length != messages.length) {
+            throw error("%d settings for %d messages", settings.length,
+                        messages.length);
+        }
+        HashMap<String, List<Integer>> groups = new HashMap<>();
+        for (int m = 0; m < messages.length; m++) {
+            Setting setting = settings[m];
+            if (setting == null || messages[m] == null) {
+                throw error("message %d: no setting or no message", m);
+            }
+            String key = key(setting);
+            List<Integer> group = groups.get(key);
+            if (group == null) {
+                check(setting, m);
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(m);
+        }
+        ArrayList<int[]> chunks = new ArrayList<>();
+        for (List<Integer> group : groups.values()) {
+            for (int start = 0; start < group.size(); start += CHUNK) {
+                int[] chunk = new int[Math.min(CHUNK, group.size() - start)];
+                for (int i = 0; i < chunk.length; i++) {
+                    chunk[i] = group.get(start + i);
+                }
+                chunks.add(chunk);
+            }
+        }
+        String[] result = new String[messages.length];
+        chunks.parallelStream().forEach(chunk -> {
+            Machine machine = _machines.get();
+            for (int i = 0; i < chunk.length; i++) {
+                int m = chunk[i];
+                result[m] = convert(machine, settings[m], messages[m],
+                                    i == 0, m);
+            }
+        });
+        return result;
+    }
+
+    /** Return the conversion of MESSAGE, number M of a batch, by MACHINE
+     *  set up by SETTING.  If FIRST, MACHINE is set up in full;
+     *  otherwise it has been set up for a setting in the same group. */
+    private String convert(Machine machine, Setting setting, String message,
+                           boolean first, int m) {
+        Alphabet alphabet = machine.alphabet();
+        try {
+            if (first) {
+                setting.applyTo(machine);
+            } else {
+                String positions = setting.positions();
+                if (positions.length() != machine.numRotors() - 1) {
+                    throw error("expected %d positions",
+                                machine.numRotors() - 1);
+                }
+                for (int i = 0; i < positions.length(); i++) {
+                    if (!alphabet.contains(positions.charAt(i))) {
+                        throw error("initial position %c not in alphabet",
+                                    positions.charAt(i));
+                    }
+                }
+                machine.setPlugboard(setting.plugboard());
+                machine.setRotors(positions);
+            }
+        } catch (EnigmaException excp) {
+            throw error("message %d: %s", m, excp.getMessage());
+        }
+        char[] chars = new char[message.length()];
+        for (int i = 0; i < chars.length; i++) {
+            int c = alphabet.toInt(message.charAt(i));
+            if (c < 0) {
+                throw error("message %d: '%c' not in alphabet", m,
+                            message.charAt(i));
+            }
+            chars[i] = alphabet.toChar(machine.convert(c));
+        }
+        return new String(chars);
+    }
+
+    /** Return the key of the group of messages with setting SETTING:
+     *  its rotors and the positions of those that never move. */
+    private String key(Setting setting) {
+        String positions = setting.positions();
+        StringBuilder key = new StringBuilder();
+        for (String rotor : setting.rotors()) {
+            key.append(rotor).append(' ');
+        }
+        return key.append(positions, 0, Math.min(positions.length(),
+                                                  _firstMoving - 1))
+            .toString();
+    }
+
+    /** Check that SETTING, the setting of message M of a batch and the
+     *  first of its group, names one of my rotors for each slot, so that
+     *  a bad batch fails before any work is done.  Everything else is
+     *  checked as each setting is applied. */
+    private void check(Setting setting, int m) {
+        String[] rotors = setting.rotors();
+        if (rotors.length != _config.numRotors()) {
+            throw error("message %d: expected %d rotors", m,
+                        _config.numRotors());
+        }
+        for (String rotor : rotors) {
+            if (!_names.contains(rotor.toUpperCase())) {
+                throw error("message %d: unknown rotor %s", m, rotor);
+            }
+        }
+    }
+
+    /** Configuration of my machines. */
+    private final Config _config;
+
+    /** Slot of the first rotor that moves. */
+    private final int _firstMoving;
+
+    /** Names of my rotors, in upper case. */
+    private final HashSet<String> _names = new HashSet<>();
+
+    /** Machine of each thread. */
+    private final ThreadLocal<Machine> _machines;
+}
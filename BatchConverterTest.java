@@ -0,0 +1,158 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchConverter class.
+ *  @author Josh Rubin
+ */
+public class BatchConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Names of the naval rotors that move. */
+    private static final String[] MOVING = { "I", "II", "III", "IV" };
+
+    /** Return the naval configuration. */
+    private Config config() {
+        return new Parser(new StringReader(navalConfig()), "test").config();
+    }
+
+    /** Return LENGTH random upper-case letters from RANDOM. */
+    private String letters(Random random, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            result.append(UPPER_STRING.charAt(random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /** Return a random naval setting from RANDOM, with a plugboard of
+     *  up to ten pairs. */
+    private Setting setting(Random random) {
+        String[] rotors = new String[5];
+        rotors[0] = random.nextBoolean() ? "B" : "C";
+        rotors[1] = random.nextBoolean() ? "Beta" : "Gamma";
+        StringBuilder moving = new StringBuilder("0123");
+        for (int i = 2; i < 5; i++) {
+            int k = random.nextInt(moving.length());
+            rotors[i] = MOVING[moving.charAt(k) - '0'];
+            moving.deleteCharAt(k);
+        }
+        StringBuilder unused = new StringBuilder(UPPER_STRING);
+        StringBuilder plugs = new StringBuilder();
+        for (int k = random.nextInt(11); k > 0; k--) {
+            plugs.append('(');
+            for (int j = 0; j < 2; j++) {
+                int i = random.nextInt(unused.length());
+                plugs.append(unused.charAt(i));
+                unused.deleteCharAt(i);
+            }
+            plugs.append(')');
+        }
+        return new Setting(rotors, letters(random, 4),
+                           new Permutation(plugs.toString(), UPPER));
+    }
+
+    /** Return MESSAGE converted by a fresh machine of CONFIG set up by
+     *  SETTING. */
+    private String convert(Config config, Setting setting, String message) {
+        Machine machine = config.newMachine();
+        setting.applyTo(machine);
+        return machine.convert(message);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void matchesOneMachineEach() {
+        Config config = config();
+        Random random = new Random(47);
+        Setting[] settings = new Setting[2000];
+        String[] messages = new String[settings.length];
+        for (int m = 0; m < settings.length; m++) {
+            settings[m] = setting(random);
+            messages[m] = letters(random, random.nextInt(120));
+        }
+        String[] result = new BatchConverter(config).convert(settings,
+                                                            messages);
+        assertEquals(messages.length, result.length);
+        for (int m = 0; m < messages.length; m++) {
+            assertEquals("message " + m,
+                         convert(config, settings[m], messages[m]),
+                         result[m]);
+        }
+    }
+
+    @Test
+    public void sharesRotorOrder() {
+        Config config = config();
+        Random random = new Random(48);
+        Setting day = setting(random);
+        Setting[] settings = new Setting[3 * BatchConverter.CHUNK + 5];
+        String[] messages = new String[settings.length];
+        for (int m = 0; m < settings.length; m++) {
+            settings[m] = new Setting(day.rotors(),
+                                      day.positions().charAt(0)
+                                      + letters(random, 3),
+                                      setting(random).plugboard());
+            messages[m] = letters(random, 50);
+        }
+        BatchConverter converter = new BatchConverter(config);
+        String[] result = converter.convert(settings, messages);
+        String[] again = converter.convert(settings, messages);
+        for (int m = 0; m < messages.length; m++) {
+            assertEquals(convert(config, settings[m], messages[m]),
+                         result[m]);
+            assertEquals(result[m], again[m]);
+        }
+    }
+
+    @Test
+    public void emptyBatch() {
+        assertEquals(0, new BatchConverter(config())
+                     .convert(new Setting[0], new String[0]).length);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void unknownRotor() {
+        Setting setting = new Setting(new String[] {"B", "Beta", "I", "II",
+                                                    "IX"},
+                                      "AAAA", new Permutation("", UPPER));
+        new BatchConverter(config()).convert(new Setting[] { setting },
+                                             new String[] { "AB" });
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void badCharacter() {
+        Setting setting = new Setting(new String[] {"B", "Beta", "I", "II",
+                                                    "III"},
+                                      "AAAA", new Permutation("", UPPER));
+        new BatchConverter(config())
+            .convert(new Setting[] { setting, setting },
+                     new String[] { "AB", "A B" });
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void badPositions() {
+        Setting setting = new Setting(new String[] {"B", "Beta", "I", "II",
+                                                    "III"},
+                                      "AAAA", new Permutation("", UPPER));
+        Setting shorter = new Setting(setting.rotors(), "AAA",
+                                      setting.plugboard());
+        new BatchConverter(config())
+            .convert(new Setting[] { setting, shorter },
+                     new String[] { "AB", "AB" });
+    }
+}
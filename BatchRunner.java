@@ -0,0 +1,164 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+
+import static enigma.EnigmaException.*;
+
+/** Runner of many Main jobs in one process.  A manifest lists the jobs,
+ *  one to a line, each as the names of a configuration file, an input
+ *  file, and an output file, separated by blanks; blank lines and lines
+ *  starting with '#' are ignored.  The jobs run concurrently on a fixed
+ *  number of threads.  Each configuration file is read once, however
+ *  many jobs use it, and each job gets a machine of its own.  An error
+ *  in one job is reported without stopping the others.
+ *  @author Josh Rubin
+ */
+class BatchRunner {
+
+    /** A runner for the jobs in the manifest file named MANIFEST, using
+     *  THREADS threads. */
+    BatchRunner(String manifest, int threads) {
+        if (threads < 1) {
+            throw error("number of threads must be positive");
+        }
+        _threads = threads;
+        try (BufferedReader lines =
+                 new BufferedReader(Main.getInput(manifest))) {
+            int lineNum = 0;
+            for (String line = lines.readLine(); line != null;
+                 line = lines.readLine()) {
+                lineNum += 1;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] job = line.split("\\s+");
+                if (job.length != 3) {
+                    throw error("%s, line %d: expected CONFIG INPUT OUTPUT",
+                                manifest, lineNum);
+                }
+                _jobs.add(job);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", manifest);
+        }
+    }
+
+    /** Return a runner as specified by the command-line arguments ARGS,
+     *  which are "--batch", the name of a manifest, and optionally a
+     *  number of threads (by default, the number of processors). */
+    static BatchRunner fromArgs(String... args) {
+        if (args.length < 2 || args.length > 3) {
+            throw error("usage: --batch MANIFEST [THREADS]");
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length == 3) {
+            try {
+                threads = Integer.parseInt(args[2]);
+            } catch (NumberFormatException excp) {
+                throw error("bad number of threads: %s", args[2]);
+            }
+        }
+        return new BatchRunner(args[1], threads);
+    }
+
+    /** Return the number of jobs in my manifest. */
+    int numJobs() {
+        return _jobs.size();
+    }
+
+    /** Run all my jobs, reporting the outcome and time of each, and then
+     *  totals, on LOG.  Return true iff every job succeeded. */
+    boolean run(PrintStream log) {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayList<Future<String>> results = new ArrayList<>();
+        long[] times = new long[_jobs.size()];
+        for (int i = 0; i < _jobs.size(); i++) {
+            final int job = i;
+            results.add(pool.submit(() -> runJob(job, times)));
+        }
+        pool.shutdown();
+        int failures = 0;
+        long jobTime = 0;
+        for (int i = 0; i < results.size(); i++) {
+            String error;
+            try {
+                error = results.get(i).get();
+            } catch (InterruptedException | ExecutionException excp) {
+                Throwable cause = excp.getCause() == null ? excp
+                    : excp.getCause();
+                error = String.valueOf(cause);
+            }
+            String[] job = _jobs.get(i);
+            jobTime += times[i];
+            if (error == null) {
+                log.printf("ok     %8.1f ms  %s %s %s%n", times[i] / 1e6,
+                           job[0], job[1], job[2]);
+            } else {
+                failures += 1;
+                log.printf("FAILED %8.1f ms  %s %s %s: %s%n", times[i] / 1e6,
+                           job[0], job[1], job[2], error);
+            }
+        }
+        long wall = System.nanoTime() - start;
+        log.printf("%d jobs, %d failed, %d configurations, %d threads; "
+                   + "%.1f ms elapsed, %.1f ms in jobs%n",
+                   _jobs.size(), failures, _configs.size(), _threads,
+                   wall / 1e6, jobTime / 1e6);
+        return failures == 0;
+    }
+
+    /** Run job number JOB, recording its time in TIMES[JOB].  Return null
+     *  if it succeeds, and otherwise a description of its error. */
+    private String runJob(int job, long[] times) {
+        String[] names = _jobs.get(job);
+        long start = System.nanoTime();
+        try {
+            Machine machine = config(names[0]).newMachine();
+            machine.chooseEngine(new File(names[1]).length(), false);
+            PrintStream output = null;
+            try (Reader input = Main.getInput(names[1])) {
+                output = Main.getOutput(names[2]);
+                Main.process(machine, input, output);
+            } finally {
+                if (output != null) {
+                    output.close();
+                }
+            }
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        } catch (IOException excp) {
+            return String.format("could not close %s", names[1]);
+        } finally {
+            times[job] = System.nanoTime() - start;
+        }
+    }
+
+    /** Return the configuration in the file named NAME, reading it only
+     *  the first time it is requested. */
+    private Config config(String name) {
+        return _configs.computeIfAbsent(name, Main::readConfig);
+    }
+
+    /** Number of threads on which jobs run. */
+    private final int _threads;
+
+    /** The jobs, each as {CONFIG, INPUT, OUTPUT}. */
+    private final ArrayList<String[]> _jobs = new ArrayList<>();
+
+    /** Configurations read so far, by file name. */
+    private final ConcurrentHashMap<String, Config> _configs =
+        new ConcurrentHashMap<>();
+}
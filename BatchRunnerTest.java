@@ -0,0 +1,92 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+/** The suite of all JUnit tests for the BatchRunner class.
+ *  @author Josh Rubin
+ */
+public class BatchRunnerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String CONFIG =
+        "ABCDEF 3 2\n"
+        + "P MA (ABC) (DE)\n"
+        + "Q MC (AFEDCB)\n"
+        + "X R (AB) (CD) (EF)\n";
+
+    /** Return a new temporary file containing CONTENTS. */
+    private File tempFile(String contents) throws IOException {
+        File file = File.createTempFile("enigma", ".txt");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.print(contents);
+        }
+        return file;
+    }
+
+    /** Return the contents of FILE. */
+    private String contents(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void jobsMatchMain() throws IOException {
+        String config = tempFile(CONFIG).getPath();
+        File input = tempFile("* X P Q AA\nABCDEF FEDCBA\n");
+        File single = tempFile("");
+        Main.main(config, input.getPath(), single.getPath());
+        File out1 = tempFile(""), out2 = tempFile("");
+        File manifest = tempFile(
+            "# two jobs sharing a configuration\n"
+            + config + " " + input + " " + out1 + "\n\n"
+            + config + "\t" + input + "  " + out2 + "\n");
+        BatchRunner runner = new BatchRunner(manifest.getPath(), 2);
+        assertEquals(2, runner.numJobs());
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        assertTrue(runner.run(new PrintStream(log)));
+        assertEquals(contents(single), contents(out1));
+        assertEquals(contents(single), contents(out2));
+        assertTrue(log.toString().contains("2 jobs, 0 failed, "
+                                           + "1 configurations"));
+    }
+
+    @Test
+    public void failedJobDoesNotStopOthers() throws IOException {
+        String config = tempFile(CONFIG).getPath();
+        File good = tempFile("* X P Q AA\nABCDEF\n");
+        File bad = tempFile("ABCDEF\n");
+        File out1 = tempFile(""), out2 = tempFile(""), out3 = tempFile("");
+        File manifest = tempFile(
+            config + " " + bad + " " + out1 + "\n"
+            + config + " " + good + " " + out2 + "\n"
+            + config + " " + new File(good.getPath() + ".missing") + " "
+            + out3 + "\n");
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        assertFalse(new BatchRunner(manifest.getPath(), 1)
+                    .run(new PrintStream(log)));
+        assertFalse(contents(out2).isEmpty());
+        assertTrue(log.toString().contains("3 jobs, 2 failed"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void badManifestLine() throws IOException {
+        new BatchRunner(tempFile("a b\n").getPath(), 1);
+    }
+}
@@ -0,0 +1,610 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.stream.LongStream;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the characteristics of all the keys of a configuration,
+ *  after Rejewski.  Under the key of the day, each message key is
+ *  enciphered twice, at positions 1 to 6; if A1 ... A6 are the machine's
+ *  permutations at those positions, the products A1A4, A2A5, and A3A6
+ *  are determined by a day's indicators alone, and the lengths of their
+ *  cycles (the characteristic) do not depend on the plugboard.  The
+ *  catalog lists, for each KeySpace key, a hash of its characteristic,
+ *  sorted, in a file, so that the keys with a given characteristic are
+ *  found by binary search and then confirmed.  Catalogs larger than
+ *  memory are built as sorted runs that are then merged, and are mapped
+ *  in segments, since one mapping cannot exceed 2 GB.
+ *  @author Josh Rubin
+ */
+class CharacteristicCatalog {
+
+    /** Number of positions at which a message key is enciphered. */
+    static final int INDICATOR_LENGTH = 6;
+
+    /** First word of a catalog file. */
+    private static final int MAGIC = 0x454e4331;
+
+    /** Size of the header of a catalog file in bytes: the magic word,
+     *  the number of low-order bits of each record holding its key, and
+     *  the fingerprint of the configuration and size of its key space. */
+    private static final int HEADER_SIZE = 24;
+
+    /** Number of records written to a catalog file at a time. */
+    private static final int WRITE_CHUNK = 1 << 16;
+
+    /** Largest number of records built in memory and sorted at once.
+     *  Larger catalogs are built as sorted runs of this many records,
+     *  kept in a scratch file, and then merged. */
+    static final int RUN_RECORDS = 1 << 24;
+
+    /** Number of records read from each run at a time when runs are
+     *  merged, kept small so that many runs can be merged at once. */
+    private static final int MERGE_CHUNK = 1 << 12;
+
+    /** Largest number of records mapped as one buffer, which must lie
+     *  within 2 GB. */
+    static final int SEGMENT_RECORDS = 1 << 28;
+
+    /** Largest number of keys cataloged: a file of 512 GB. */
+    static final long MAX_KEYS = 1L << 36;
+
+    /** A catalog for the configuration CONFIG whose sorted records are
+     *  those of SEGMENTS in turn, each holding SEGMENTRECORDS records
+     *  but the last. */
+    private CharacteristicCatalog(Config config, LongBuffer[] segments,
+                                  int segmentRecords) {
+        _config = config;
+        _keys = new KeySpace(config.newMachine());
+        _keyBits = keyBits(_keys.size());
+        _segments = segments;
+        _segmentRecords = segmentRecords;
+    }
+
+    /** Build the catalog of CONFIG in parallel, write it to FILE, and
+     *  return it. */
+    static CharacteristicCatalog build(Config config, File file) {
+        return build(config, file, RUN_RECORDS);
+    }
+
+    /** Build the catalog of CONFIG in parallel as sorted runs of at most
+     *  RUNRECORDS records, so that no more than that many are held in
+     *  memory, merge them into FILE, and return the catalog. */
+    static CharacteristicCatalog build(Config config, File file,
+                                       int runRecords) {
+        KeySpace keys = new KeySpace(config.newMachine());
+        long size = keys.size();
+        if (size > MAX_KEYS) {
+            throw error("key space of %d keys too large to catalog", size);
+        }
+        int keyBits = keyBits(size);
+        long[] records = new long[(int) Math.min(size, runRecords)];
+        ThreadLocal<Characteristics> local =
+            ThreadLocal.withInitial(() -> new Characteristics(config));
+        File runs = new File(file.getPath() + ".runs");
+        try (FileChannel out =
+                 FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE);
+             FileChannel scratch = size <= runRecords ? null
+                 : FileChannel.open(runs.toPath(),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.DELETE_ON_CLOSE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(keyBits)
+                .putLong(config.fingerprint()).putLong(size).flip();
+            out.write(header);
+            for (long start = 0; start < size; start += runRecords) {
+                long first = start;
+                int length = (int) Math.min(runRecords, size - start);
+                LongStream.range(first, first + length).parallel()
+                    .forEach(key -> {
+                            long hash = local.get().hash(key);
+                            records[(int) (key - first)] =
+                                ((hash >>> keyBits) << keyBits) | key;
+                        });
+                Arrays.parallelSort(records, 0, length);
+                write(scratch == null ? out : scratch, records, length);
+            }
+            if (scratch != null) {
+                merge(scratch, size, runRecords, out);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+        return open(config, file);
+    }
+
+    /** Write the first LENGTH records of RECORDS to OUT. */
+    private static void write(FileChannel out, long[] records, int length)
+        throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(8 * WRITE_CHUNK);
+        for (int i = 0; i < length; i += WRITE_CHUNK) {
+            int n = Math.min(WRITE_CHUNK, length - i);
+            chunk.clear();
+            chunk.asLongBuffer().put(records, i, n);
+            chunk.limit(8 * n);
+            while (chunk.hasRemaining()) {
+                out.write(chunk);
+            }
+        }
+    }
+
+    /** Merge the sorted runs of RUNRECORDS records (but the last) that
+     *  hold the SIZE records of RUNS, in order, and write the result to
+     *  OUT. */
+    private static void merge(FileChannel runs, long size, int runRecords,
+                              FileChannel out) throws IOException {
+        PriorityQueue<Run> queue =
+            new PriorityQueue<>((a, b) -> Long.compare(a.peek(), b.peek()));
+        for (long start = 0; start < size; start += runRecords) {
+            Run run = new Run(runs, start, Math.min(size, start + runRecords));
+            if (run.fill()) {
+                queue.add(run);
+            }
+        }
+        long[] merged = new long[WRITE_CHUNK];
+        int length = 0;
+        while (!queue.isEmpty()) {
+            Run run = queue.poll();
+            merged[length] = run.next();
+            length += 1;
+            if (length == merged.length) {
+                write(out, merged, length);
+                length = 0;
+            }
+            if (run.fill()) {
+                queue.add(run);
+            }
+        }
+        write(out, merged, length);
+    }
+
+    /** A sorted run of records in a scratch file, read a chunk at a time
+     *  as it is merged. */
+    private static class Run {
+
+        /** The run of records FROM up to but not including TO in FILE. */
+        Run(FileChannel file, long from, long to) {
+            _file = file;
+            _next = from;
+            _to = to;
+        }
+
+        /** Make sure my next record is in my chunk, reading the next chunk
+         *  if need be.  Return false iff I have no records left. */
+        boolean fill() throws IOException {
+            if (_chunk.hasRemaining()) {
+                return true;
+            }
+            if (_next == _to) {
+                return false;
+            }
+            int n = (int) Math.min(MERGE_CHUNK, _to - _next);
+            _bytes.clear().limit(8 * n);
+            while (_bytes.hasRemaining()) {
+                if (_file.read(_bytes, 8 * _next + _bytes.position()) < 0) {
+                    throw new IOException("run ends early");
+                }
+            }
+            _bytes.flip();
+            _chunk = _bytes.asLongBuffer();
+            _next += n;
+            return true;
+        }
+
+        /** Return my next record, without taking it. */
+        long peek() {
+            return _chunk.get(_chunk.position());
+        }
+
+        /** Take and return my next record. */
+        long next() {
+            return _chunk.get();
+        }
+
+        /** Scratch file holding me. */
+        private final FileChannel _file;
+
+        /** Index in _file of my first record not yet read. */
+        private long _next;
+
+        /** Index in _file just past my last record. */
+        private final long _to;
+
+        /** Space for the records read at a time. */
+        private final ByteBuffer _bytes =
+            ByteBuffer.allocate(8 * MERGE_CHUNK);
+
+        /** Records read but not yet taken. */
+        private LongBuffer _chunk = LongBuffer.allocate(0);
+    }
+
+    /** Return the catalog of CONFIG in FILE, as written by build, which
+     *  is mapped into memory rather than read. */
+    static CharacteristicCatalog open(Config config, File file) {
+        return open(config, file, SEGMENT_RECORDS);
+    }
+
+    /** Return the catalog of CONFIG in FILE, as written by build, mapped
+     *  into memory as buffers of at most SEGMENTRECORDS records each. */
+    static CharacteristicCatalog open(Config config, File file,
+                                      int segmentRecords) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                continue;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE
+                || header.getInt() != MAGIC) {
+                throw error("%s is not a characteristic catalog", file);
+            }
+            int keyBits = header.getInt();
+            long fingerprint = header.getLong(), size = header.getLong();
+            if (size < 0 || size > MAX_KEYS) {
+                throw error("%s has %d keys, too many to open", file, size);
+            }
+            if (fingerprint != config.fingerprint()
+                || channel.size() != HEADER_SIZE + 8 * size) {
+                throw error("%s is a catalog of another configuration",
+                            file);
+            }
+            LongBuffer[] segments =
+                new LongBuffer[(int) ((size + segmentRecords - 1)
+                                      / segmentRecords)];
+            for (int k = 0; k < segments.length; k++) {
+                long first = (long) k * segmentRecords;
+                long length = Math.min(segmentRecords, size - first);
+                segments[k] =
+                    channel.map(FileChannel.MapMode.READ_ONLY,
+                                HEADER_SIZE + 8 * first, 8 * length)
+                    .asLongBuffer();
+            }
+            CharacteristicCatalog catalog =
+                new CharacteristicCatalog(config, segments, segmentRecords);
+            if (catalog._keyBits != keyBits || catalog._keys.size() != size) {
+                throw error("%s is a catalog of another configuration",
+                            file);
+            }
+            return catalog;
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Look up the keys whose characteristics are given by the day's
+     *  indicators in the file ARGS[2], one to a line, in the catalog of
+     *  the configuration file ARGS[0] held in the file ARGS[1], building
+     *  the catalog first if ARGS[1] does not exist.  Prints the setting
+     *  line of each matching key.  Exits with code 1 on errors. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 3) {
+                throw error("usage: CharacteristicCatalog CONFIG CATALOG "
+                            + "INDICATORS");
+            }
+            Config config = Main.readConfig(args[0]);
+            File file = new File(args[1]);
+            long start = System.nanoTime();
+            CharacteristicCatalog catalog;
+            if (file.exists()) {
+                catalog = open(config, file);
+            } else {
+                catalog = build(config, file);
+                System.err.printf("built catalog of %d keys in %.1f s%n",
+                                  catalog.keys().size(),
+                                  (System.nanoTime() - start) / 1e9);
+            }
+            String[] indicators;
+            try {
+                indicators = Files.readAllLines(new File(args[2]).toPath())
+                    .stream().map(String::trim).filter(s -> !s.isEmpty())
+                    .toArray(String[]::new);
+            } catch (IOException excp) {
+                throw error("could not read %s", args[2]);
+            }
+            start = System.nanoTime();
+            long[] found =
+                catalog.lookup(characteristic(indicators, config.alphabet()));
+            for (long key : found) {
+                System.out.println(catalog.keys().describe(key));
+            }
+            System.err.printf("%d keys found in %.2f ms%n", found.length,
+                              (System.nanoTime() - start) / 1e6);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the key space my keys number. */
+    KeySpace keys() {
+        return _keys;
+    }
+
+    /** Return the characteristic of KEY: the cycle type (as for
+     *  Permutation.cycleType) of each of the three products. */
+    int[][] characteristic(long key) {
+        return new Characteristics(_config).characteristic(key);
+    }
+
+    /** Return the characteristic fixed by INDICATORS, the message keys of
+     *  a day each enciphered twice (so each INDICATOR_LENGTH characters
+     *  of ALPHABET).  There must be enough of them to determine the three
+     *  products completely. */
+    static int[][] characteristic(String[] indicators, Alphabet alphabet) {
+        int n = alphabet.size();
+        int[][] result = new int[INDICATOR_LENGTH / 2][];
+        for (int p = 0; p < result.length; p++) {
+            int[] map = new int[n];
+            Arrays.fill(map, -1);
+            for (String indicator : indicators) {
+                if (indicator.length() != INDICATOR_LENGTH) {
+                    throw error("indicator %s is not %d characters long",
+                                indicator, INDICATOR_LENGTH);
+                }
+                int a = alphabet.toInt(indicator.charAt(p));
+                int b = alphabet.toInt(indicator.charAt(p + result.length));
+                if (a < 0 || b < 0) {
+                    throw error("indicator %s not in alphabet", indicator);
+                }
+                if (map[a] >= 0 && map[a] != b) {
+                    throw error("indicators are inconsistent at %c",
+                                alphabet.toChar(a));
+                }
+                map[a] = b;
+            }
+            boolean[] hit = new boolean[n];
+            for (int a = 0; a < n; a++) {
+                if (map[a] < 0) {
+                    throw error("indicators do not determine the image "
+                                + "of %c at position %d", alphabet.toChar(a),
+                                p + 1);
+                }
+                if (hit[map[a]]) {
+                    throw error("indicators are inconsistent at %c",
+                                alphabet.toChar(map[a]));
+                }
+                hit[map[a]] = true;
+            }
+            result[p] = new Permutation(map, alphabet).cycleType();
+        }
+        return result;
+    }
+
+    /** Return the keys, in increasing order, whose characteristic is
+     *  CHARACTERISTIC. */
+    long[] lookup(int[][] characteristic) {
+        Characteristics checker = new Characteristics(_config);
+        int[][] counts = checker.counts(characteristic);
+        long prefix = checker.hash(counts) >>> _keyBits;
+        long mask = (1L << _keyBits) - 1;
+        long size = _keys.size();
+        long lo = 0, hi = size;
+        long first = prefix << _keyBits;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (record(mid) < first) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        ArrayList<Long> found = new ArrayList<>();
+        for (long i = lo; i < size && record(i) >>> _keyBits == prefix;
+             i++) {
+            long key = record(i) & mask;
+            if (checker.matches(key, counts)) {
+                found.add(key);
+            }
+        }
+        long[] result = new long[found.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = found.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Return record number I, counting across my segments. */
+    private long record(long i) {
+        return _segments[(int) (i / _segmentRecords)]
+            .get((int) (i % _segmentRecords));
+    }
+
+    /** Return the number of low-order bits needed to hold any key from
+     *  0 to SIZE - 1. */
+    private static int keyBits(long size) {
+        return Math.max(1, 64 - Long.numberOfLeadingZeros(size - 1));
+    }
+
+    /** A calculator of the characteristics of the keys of a
+     *  configuration, with a machine of its own and scratch space, so
+     *  that it allocates nothing per key.  Not shared between threads. */
+    private static class Characteristics {
+
+        /** Initial value of a hash. */
+        static final long OFFSET = 0xcbf29ce484222325L;
+
+        /** A calculator for the keys of CONFIG. */
+        Characteristics(Config config) {
+            _machine = config.newMachine();
+            _machine.setEngine(Machine.Engine.COMPOSED);
+            _machine.setPlugboard(new Permutation("", config.alphabet()));
+            _keys = new KeySpace(_machine);
+            int n = config.alphabet().size();
+            _perms = new int[INDICATOR_LENGTH][n];
+            _counts = new int[INDICATOR_LENGTH / 2][n + 1];
+            _seen = new boolean[n];
+            _positions = new int[config.numRotors() - 1];
+        }
+
+        /** Return the hash of the characteristic of KEY. */
+        long hash(long key) {
+            compute(key);
+            return hash(_counts);
+        }
+
+        /** Return true iff the characteristic of KEY has the cycle counts
+         *  COUNTS, as returned by counts. */
+        boolean matches(long key, int[][] counts) {
+            compute(key);
+            return Arrays.deepEquals(counts, _counts);
+        }
+
+        /** Return the characteristic of KEY. */
+        int[][] characteristic(long key) {
+            compute(key);
+            int[][] result = new int[_counts.length][];
+            for (int p = 0; p < result.length; p++) {
+                int numCycles = 0;
+                for (int count : _counts[p]) {
+                    numCycles += count;
+                }
+                result[p] = new int[numCycles];
+                for (int len = _seen.length, k = 0; len > 0; len--) {
+                    for (int m = 0; m < _counts[p][len]; m++) {
+                        result[p][k] = len;
+                        k += 1;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** Return the number of cycles of each length in each of the
+         *  cycle types in CHARACTERISTIC, as counts[P][LENGTH]. */
+        int[][] counts(int[][] characteristic) {
+            if (characteristic.length != _counts.length) {
+                throw error("a characteristic has %d cycle types",
+                            _counts.length);
+            }
+            int[][] counts = new int[_counts.length][_seen.length + 1];
+            for (int p = 0; p < counts.length; p++) {
+                int total = 0;
+                for (int len : characteristic[p]) {
+                    if (len < 1 || len > _seen.length) {
+                        throw error("bad cycle length %d", len);
+                    }
+                    counts[p][len] += 1;
+                    total += len;
+                }
+                if (total != _seen.length) {
+                    throw error("cycle type does not cover the alphabet");
+                }
+            }
+            return counts;
+        }
+
+        /** Return the hash of the cycle counts COUNTS. */
+        long hash(int[][] counts) {
+            long hash = OFFSET;
+            for (int[] type : counts) {
+                for (int len = 1; len < type.length; len++) {
+                    if (type[len] > 0) {
+                        hash = mix(hash, len * type.length + type[len]);
+                    }
+                }
+                hash = mix(hash, -1);
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            return hash ^ (hash >>> 33);
+        }
+
+        /** Return HASH updated with V. */
+        static long mix(long hash, int v) {
+            return (hash ^ v) * 0x100000001b3L;
+        }
+
+        /** Set _counts to the cycle counts of the products of the
+         *  permutations of my machine at the first six positions
+         *  after KEY. */
+        private void compute(long key) {
+            if (_keys.order(key) != _order) {
+                _order = _keys.order(key);
+                _machine.insertRotors(_keys.rotors(key));
+            }
+            _machine.setRotors(_keys.positions(key, _positions));
+            for (int[] perm : _perms) {
+                _machine.advance();
+                for (int c = 0; c < perm.length; c++) {
+                    perm[c] = _machine.convertRotors(c);
+                }
+            }
+            for (int p = 0; p < _counts.length; p++) {
+                int[] first = _perms[p], second = _perms[p + _counts.length];
+                int[] counts = _counts[p];
+                Arrays.fill(counts, 0);
+                Arrays.fill(_seen, false);
+                for (int c = 0; c < _seen.length; c++) {
+                    if (!_seen[c]) {
+                        int len = 0;
+                        for (int e = c; !_seen[e]; e = second[first[e]]) {
+                            _seen[e] = true;
+                            len += 1;
+                        }
+                        counts[len] += 1;
+                    }
+                }
+            }
+        }
+
+        /** Machine whose permutations are taken. */
+        private final Machine _machine;
+
+        /** Key space of _machine. */
+        private final KeySpace _keys;
+
+        /** The permutations of _machine at six successive positions. */
+        private final int[][] _perms;
+
+        /** Cycle counts of the three products, as returned by counts. */
+        private final int[][] _counts;
+
+        /** Scratch marks of the characters visited. */
+        private final boolean[] _seen;
+
+        /** Scratch initial positions. */
+        private final int[] _positions;
+
+        /** Rotor order inserted in _machine, or -1. */
+        private int _order = -1;
+    }
+
+    /** Configuration whose keys I catalog. */
+    private final Config _config;
+
+    /** Key space of the configuration. */
+    private final KeySpace _keys;
+
+    /** Number of low-order bits of a record holding its key. */
+    private final int _keyBits;
+
+    /** Records, each a characteristic hash in its high-order bits and a
+     *  key in its low _keyBits bits, in increasing order across the
+     *  segments in turn. */
+    private final LongBuffer[] _segments;
+
+    /** Number of records in each of _segments but the last. */
+    private final int _segmentRecords;
+}
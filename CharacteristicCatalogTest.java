@@ -0,0 +1,150 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the CharacteristicCatalog class.
+ *  @author Josh Rubin
+ */
+public class CharacteristicCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String CONFIG =
+        "ABCDEF 4 3\n"
+        + "P MA (ABC) (DE)\n"
+        + "Q MC (AFEDCB)\n"
+        + "S MF (AD) (BF) (CE)\n"
+        + "T MBE (ACFB)\n"
+        + "X R (AB) (CD) (EF)\n"
+        + "Y R (AF) (BE) (CD)\n";
+
+    /** Return the configuration CONFIG. */
+    private Config config() {
+        return new Parser(new StringReader(CONFIG), "test").config();
+    }
+
+    /** Return a new temporary file name, with no file. */
+    private File tempFile() throws IOException {
+        File file = File.createTempFile("enigma", ".cat");
+        file.deleteOnExit();
+        file.delete();
+        return file;
+    }
+
+    /** Return N indicators formed by enciphering random doubled message
+     *  keys with MACHINE under KEY of KEYS, using RANDOM. */
+    private String[] indicators(Machine machine, KeySpace keys, long key,
+                                int n, Random random) {
+        String[] result = new String[n];
+        for (int i = 0; i < n; i += 1) {
+            keys.apply(key, machine);
+            char[] msgKey = new char[3];
+            for (int j = 0; j < 3; j += 1) {
+                msgKey[j] = machine.alphabet().toChar(random.nextInt(6));
+            }
+            String doubled = new String(msgKey) + new String(msgKey);
+            result[i] = machine.convert(doubled);
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void findsDayKey() throws IOException {
+        Config config = config();
+        File file = tempFile();
+        CharacteristicCatalog built = CharacteristicCatalog.build(config,
+                                                                  file);
+        CharacteristicCatalog opened = CharacteristicCatalog.open(config,
+                                                                  file);
+        KeySpace keys = built.keys();
+        Machine machine = config.newMachine();
+        machine.setPlugboard(new Permutation("(AE) (BC)", config.alphabet()));
+        Random random = new Random(35);
+        for (long key = 0; key < keys.size(); key += 97) {
+            int[][] characteristic = CharacteristicCatalog.characteristic(
+                indicators(machine, keys, key, 200, random),
+                config.alphabet());
+            assertArrayEquals(built.characteristic(key)[1],
+                              characteristic[1]);
+            long[] found = opened.lookup(characteristic);
+            assertArrayEquals(found, built.lookup(characteristic));
+            boolean hasKey = false;
+            for (long k : found) {
+                hasKey |= k == key;
+                assertArrayEquals(characteristic[0],
+                                  built.characteristic(k)[0]);
+                assertArrayEquals(characteristic[2],
+                                  built.characteristic(k)[2]);
+            }
+            assertTrue(hasKey);
+        }
+    }
+
+    @Test
+    public void buildsInRunsAndSegments() throws IOException {
+        Config config = config();
+        File whole = tempFile(), merged = tempFile();
+        CharacteristicCatalog.build(config, whole);
+        CharacteristicCatalog.build(config, merged, 1000);
+        assertArrayEquals(Files.readAllBytes(whole.toPath()),
+                          Files.readAllBytes(merged.toPath()));
+        assertFalse(new File(merged.getPath() + ".runs").exists());
+        CharacteristicCatalog opened =
+            CharacteristicCatalog.open(config, whole);
+        CharacteristicCatalog segmented =
+            CharacteristicCatalog.open(config, merged, 777);
+        for (long key = 0; key < opened.keys().size(); key += 31) {
+            int[][] characteristic = opened.characteristic(key);
+            long[] found = segmented.lookup(characteristic);
+            assertArrayEquals(opened.lookup(characteristic), found);
+            assertTrue(Arrays.binarySearch(found, key) >= 0);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsHugeKeySpace() throws IOException {
+        StringBuilder text =
+            new StringBuilder("ABCDEFGHIJKLMNOPQRSTUVWXYZ\n10 9\nR R ");
+        for (char c = 'A'; c < 'Z'; c += 2) {
+            text.append('(').append(c).append((char) (c + 1)).append(')');
+        }
+        text.append('\n');
+        for (int i = 1; i < 10; i++) {
+            text.append("M").append(i).append(" MA (AB)\n");
+        }
+        Config config =
+            new Parser(new StringReader(text.toString()), "test").config();
+        CharacteristicCatalog.build(config, tempFile());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void incompleteIndicators() {
+        CharacteristicCatalog.characteristic(new String[] { "ABCDEF" },
+                                             config().alphabet());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsOtherConfiguration() throws IOException {
+        File file = tempFile();
+        CharacteristicCatalog.build(config(), file);
+        Config other = new Parser(new StringReader(
+            CONFIG.replace("(ACFB)", "(ACF)")), "test").config();
+        CharacteristicCatalog.open(other, file);
+    }
+}
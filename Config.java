@@ -0,0 +1,130 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** The contents of a configuration file: an alphabet, the numbers of
+ *  rotor slots and pawls, and descriptions of the available rotors.  A
+ *  Config does not change once read, so one may be shared by any number
+ *  of threads, each making machines of its own.
+ *  @author Josh Rubin
+ */
+class Config {
+
+    /** A configuration with alphabet ALPHABET, NUMROTORS rotor slots, and
+     *  PAWLS pawls, and as yet no rotors. */
+    Config(Alphabet alphabet, int numRotors, int pawls) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _pawls = pawls;
+    }
+
+    /** Add a rotor named NAME with permutation PERM in its 0 setting.  KIND
+     *  is 'M' for a moving rotor with notches at the positions in NOTCHES,
+     *  'N' for a non-moving rotor, or 'R' for a reflector. */
+    void addRotor(String name, char kind, String notches, Permutation perm) {
+        if (kind != 'M' && kind != 'N' && kind != 'R') {
+            throw error("bad rotor description");
+        }
+        _names.add(name);
+        _kinds.add(kind);
+        _notches.add(notches);
+        _perms.add(perm);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return a new machine with fresh rotors built from my
+     *  descriptions. */
+    Machine newMachine() {
+        ArrayList<Rotor> allRotors = new ArrayList<>();
+        for (int i = 0; i < _names.size(); i++) {
+            switch (_kinds.get(i)) {
+            case 'M':
+                allRotors.add(new MovingRotor(_names.get(i), _perms.get(i),
+                                              _notches.get(i)));
+                break;
+            case 'N':
+                allRotors.add(new FixedRotor(_names.get(i), _perms.get(i)));
+                break;
+            default:
+                allRotors.add(new Reflector(_names.get(i), _perms.get(i)));
+                break;
+            }
+        }
+        return new Machine(_alphabet, _numRotors, _pawls, allRotors);
+    }
+
+    /** Return my description in the format of configuration files, with
+     *  each rotor's cycles in canonical form. */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < _alphabet.size(); i++) {
+            result.append(_alphabet.toChar(i));
+        }
+        result.append(' ').append(_numRotors).append(' ').append(_pawls)
+            .append('\n');
+        for (int i = 0; i < _names.size(); i++) {
+            result.append(describeRotor(_names.get(i), _perms.get(i)))
+                .append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return the line of a configuration file describing my rotor
+     *  named NAME, but with permutation PERM in its 0 setting. */
+    String describeRotor(String name, Permutation perm) {
+        int i = _names.indexOf(name);
+        if (i < 0) {
+            throw error("no rotor named %s", name);
+        }
+        return name + " " + _kinds.get(i) + _notches.get(i) + " " + perm;
+    }
+
+    /** Return a hash of my description (as given by toString), which
+     *  identifies files derived from me. */
+    long fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        String text = toString();
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** Alphabet of my machines. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Names of the rotors. */
+    private final ArrayList<String> _names = new ArrayList<>();
+
+    /** Kinds of the rotors ('M', 'N', or 'R'). */
+    private final ArrayList<Character> _kinds = new ArrayList<>();
+
+    /** Notches of the rotors. */
+    private final ArrayList<String> _notches = new ArrayList<>();
+
+    /** Permutations of the rotors in their 0 settings. */
+    private final ArrayList<Permutation> _perms = new ArrayList<>();
+}
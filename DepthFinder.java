@@ -0,0 +1,703 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Finder of messages in depth in a corpus of ciphertexts: pairs of
+ *  messages which, aligned at some offset, have more coinciding letters
+ *  than chance allows, as happens when they were enciphered with the same
+ *  or overlapping key settings.  Each message is held as bitsets of its
+ *  positions: one for each bit of the indices of its letters, and one of
+ *  all its positions.  The coincidences of two aligned messages are then
+ *  counted 64 positions at a time, with a few ANDs and XORs per bit of
+ *  an index rather than a comparison per letter.
+ *
+ *  All pairs are swept on all processors, with offsets limited to a
+ *  window, and each alignment is first tested on a prefix of its
+ *  overlap; only alignments that are not clearly random there are
+ *  counted in full.  As a fast path, alignments at which the two
+ *  messages share a seed, found in a sorted index of the k-grams of the
+ *  corpus, skip that test and are always counted in full, so that
+ *  repeated text (stereotyped headers, retransmissions) is found even
+ *  where it lies beyond a prefix that looks random.  The seed length k
+ *  grows with the logarithm of the number of messages, so that the
+ *  index yields a number of alignments about proportional to the size
+ *  of the corpus.
+ *
+ *  Since very many alignments are tried, the z-score a pair needs to be
+ *  reported rises with the logarithm of their number, so that on
+ *  average fewer than FALSE_ALARMS unrelated pairs are reported; each
+ *  pair reported carries the number of chance alignments expected to
+ *  score as well.
+ *  @author Josh Rubin
+ */
+class DepthFinder {
+
+    /** Default largest offset tried between two messages. */
+    static final int MAX_OFFSET = 25;
+
+    /** Default smallest overlap of two aligned messages worth testing. */
+    static final int MIN_OVERLAP = 40;
+
+    /** Default smallest z-score reported, however few alignments are
+     *  tried. */
+    static final double THRESHOLD = 4.0;
+
+    /** Expected number of alignments of unrelated messages scoring at
+     *  least the z-score needed to be reported. */
+    static final double FALSE_ALARMS = 0.05;
+
+    /** Number of 64-position words of an overlap counted before deciding
+     *  whether to count the rest. */
+    static final int PREFIX_WORDS = 4;
+
+    /** Smallest z-score on the prefix of an overlap for the rest to be
+     *  counted.  About half of all random alignments fall below this, but
+     *  a pair truly in depth (with a coincidence rate near that of German
+     *  plaintext) does so on a 256-letter prefix less than one time in a
+     *  hundred. */
+    static final double PRUNE_Z = 0.0;
+
+    /** Largest expected number of other letters of the corpus that each
+     *  letter meets by chance in the index of seeds, which fixes the
+     *  length of the seeds, and so the number of alignments that skip
+     *  the test on a prefix. */
+    static final int SEED_MEETINGS = 16;
+
+    /** Longest seed used. */
+    static final int MAX_SEED = 16;
+
+    /** Fewest bits of each entry of the index of seeds given to its
+     *  key. */
+    private static final int MIN_KEY_BITS = 16;
+
+    /** A pair of messages in depth. */
+    static class Depth implements Comparable<Depth> {
+
+        /** A pair in which letter I of message FIRST lines up with letter
+         *  I - OFFSET of message SECOND, for OVERLAP letters, of which
+         *  COINCIDENCES coincide, with z-score Z, which EXPECTED
+         *  alignments of unrelated messages would reach by chance. */
+        Depth(int first, int second, int offset, int overlap,
+              int coincidences, double z, double expected) {
+            _first = first;
+            _second = second;
+            _offset = offset;
+            _overlap = overlap;
+            _coincidences = coincidences;
+            _z = z;
+            _expected = expected;
+        }
+
+        /** Return the number of the first message. */
+        int first() {
+            return _first;
+        }
+
+        /** Return the number of the second message. */
+        int second() {
+            return _second;
+        }
+
+        /** Return the offset of the second message from the first. */
+        int offset() {
+            return _offset;
+        }
+
+        /** Return the number of coinciding letters. */
+        int coincidences() {
+            return _coincidences;
+        }
+
+        /** Return the z-score of the number of coincidences. */
+        double z() {
+            return _z;
+        }
+
+        /** Return the number of alignments of unrelated messages expected
+         *  to score at least z() among all those tried. */
+        double expected() {
+            return _expected;
+        }
+
+        @Override
+        public int compareTo(Depth other) {
+            return Double.compare(other._z, _z);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d %d offset %d overlap %d "
+                                 + "coincidences %d z %.2f expected %.2g",
+                                 _first, _second, _offset, _overlap,
+                                 _coincidences, _z, _expected);
+        }
+
+        /** Message numbers. */
+        private final int _first, _second;
+
+        /** Offset, overlap, and coincidences of the two messages. */
+        private final int _offset, _overlap, _coincidences;
+
+        /** Z-score of the coincidences, and the number of chance
+         *  alignments expected to reach it. */
+        private final double _z, _expected;
+    }
+
+    /** A finder for the messages MESSAGES, strings of characters in
+     *  ALPHABET. */
+    DepthFinder(Alphabet alphabet, List<String> messages) {
+        int n = alphabet.size();
+        _planes = Math.max(1, 32 - Integer.numberOfLeadingZeros(n - 1));
+        _lengths = new int[messages.size()];
+        _words = new int[messages.size()];
+        _masks = new long[messages.size()][];
+        _letters = new char[messages.size()][];
+        long[] counts = new long[n];
+        long total = 0;
+        for (int m = 0; m < _masks.length; m++) {
+            String text = messages.get(m);
+            int words = (text.length() + 63) >>> 6;
+            _lengths[m] = text.length();
+            _words[m] = words;
+            long[] mask = _masks[m] = new long[(_planes + 1) * words];
+            char[] letters = _letters[m] = new char[text.length()];
+            for (int i = 0; i < text.length(); i++) {
+                int c = alphabet.toInt(text.charAt(i));
+                if (c < 0) {
+                    throw error("character %c not in alphabet",
+                                text.charAt(i));
+                }
+                letters[i] = (char) c;
+                for (int p = 0; p < _planes; p++) {
+                    if ((c & (1 << p)) != 0) {
+                        mask[p * words + (i >>> 6)] |= 1L << i;
+                    }
+                }
+                mask[_planes * words + (i >>> 6)] |= 1L << i;
+                counts[c] += 1;
+            }
+            total += text.length();
+        }
+        double p = 0;
+        for (long count : counts) {
+            p += total == 0 ? 0 : ((double) count / total)
+                * ((double) count / total);
+        }
+        _chance = p;
+    }
+
+    /** Print the pairs of messages in depth in the corpus ARGS[1], with
+     *  the alphabet of configuration ARGS[0], trying offsets of up to
+     *  ARGS[2] (default MAX_OFFSET) and reporting z-scores of at least
+     *  ARGS[3] (default THRESHOLD), or of threshold(MAXOFFSET) if that
+     *  is greater.  Messages are numbered from 0.
+     *  Exits with code 1 on errors. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 4) {
+                throw error("usage: DepthFinder CONFIG CORPUS "
+                            + "[MAXOFFSET [ZSCORE]]");
+            }
+            Alphabet alphabet = Main.readConfig(args[0]).alphabet();
+            int maxOffset = MAX_OFFSET;
+            double threshold = THRESHOLD;
+            try {
+                if (args.length > 2) {
+                    maxOffset = Integer.parseInt(args[2]);
+                }
+                if (args.length > 3) {
+                    threshold = Double.parseDouble(args[3]);
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad number in arguments");
+            }
+            long start = System.nanoTime();
+            List<String> messages = readMessages(args[1]);
+            DepthFinder finder = new DepthFinder(alphabet, messages);
+            List<Depth> found = finder.find(maxOffset, MIN_OVERLAP,
+                                            threshold);
+            for (Depth depth : found) {
+                System.out.println(depth);
+            }
+            System.err.printf("%d messages, %d pairs in depth at z >= %.2f, "
+                              + "%.1f s%n", messages.size(), found.size(),
+                              Math.max(threshold,
+                                       finder.threshold(maxOffset)),
+                              (System.nanoTime() - start) / 1e9);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the messages in the file named NAME, which is in the
+     *  format of input files.  Setting lines and blank lines separate
+     *  messages; the lines of a message are joined, without whitespace,
+     *  and converted to upper case.  NAME may instead name a
+     *  MessageArchive. */
+    static List<String> readMessages(String name) {
+        ArrayList<String> messages = new ArrayList<>();
+        if (MessageArchive.isArchive(new File(name))) {
+            MessageArchive archive = MessageArchive.open(new File(name));
+            for (int m = 0; m < archive.size(); m++) {
+                messages.add(archive.message(m));
+            }
+            return messages;
+        }
+        try (BufferedReader in = new BufferedReader(Main.getInput(name))) {
+            StringBuilder text = new StringBuilder();
+            for (String line = in.readLine(); ; line = in.readLine()) {
+                String trimmed = line == null ? "" : line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("*")) {
+                    if (text.length() > 0) {
+                        messages.add(text.toString());
+                        text.setLength(0);
+                    }
+                    if (line == null) {
+                        break;
+                    }
+                } else {
+                    text.append(trimmed.replaceAll("\\s", "")
+                                .toUpperCase());
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+        return messages;
+    }
+
+    /** Return the number of messages. */
+    int size() {
+        return _masks.length;
+    }
+
+    /** Return the number of alignments of two messages at offsets of
+     *  at most MAXOFFSET in size, counting every pair of messages at
+     *  every such offset. */
+    long alignments(int maxOffset) {
+        long n = size();
+        return n * (n - 1) / 2 * (2L * maxOffset + 1);
+    }
+
+    /** Return the z-score that an alignment of two unrelated messages
+     *  reaches with probability FALSE_ALARMS / alignments(MAXOFFSET),
+     *  so that on average FALSE_ALARMS of all the alignments tried reach
+     *  it by chance. */
+    double threshold(int maxOffset) {
+        double p = FALSE_ALARMS / Math.max(1, alignments(maxOffset));
+        double lo = 0, hi = 40;
+        for (int i = 0; i < 60; i++) {
+            double mid = (lo + hi) / 2;
+            if (tail(mid) > p) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+
+    /** Return the probability that a standard normal variable exceeds Z,
+     *  for Z >= 0, with a relative error of less than 1.2e-7. */
+    static double tail(double z) {
+        double x = z / Math.sqrt(2), t = 1 / (1 + x / 2);
+        return t / 2 * Math.exp(-x * x - 1.26551223
+                                + t * (1.00002368 + t * (0.37409196
+                                + t * (0.09678418 + t * (-0.18628806
+                                + t * (0.27886807 + t * (-1.13520398
+                                + t * (1.48851587 + t * (-0.82215223
+                                + t * 0.17087277)))))))));
+    }
+
+    /** Return the length of the seeds used when offsets are at most
+     *  MAXOFFSET in size: the shortest for which each letter is expected
+     *  to meet at most SEED_MEETINGS others in the index by chance.  A
+     *  letter is looked up in two or three blocks of MAXOFFSET + 1
+     *  positions, each holding about that many letters of each
+     *  message. */
+    int seedLength(int maxOffset) {
+        double meetings = 3.0 * size() * (maxOffset + 1);
+        int k = 1;
+        while (k < MAX_SEED && _chance > 0
+               && meetings * Math.pow(_chance, k) > SEED_MEETINGS) {
+            k += 1;
+        }
+        return k;
+    }
+
+    /** Return the pairs of messages in depth, in decreasing order of
+     *  z-score: for each pair of messages, the alignment with at least
+     *  MINOVERLAP overlapping letters and offset at most MAXOFFSET in
+     *  size that has the highest z-score, if that is at least both
+     *  THRESHOLD and threshold(MAXOFFSET). */
+    List<Depth> find(int maxOffset, int minOverlap, double threshold) {
+        ConcurrentLinkedQueue<Depth> found = new ConcurrentLinkedQueue<>();
+        double floor = Math.max(threshold, threshold(maxOffset));
+        Seeds seeds = new Seeds(seedLength(maxOffset), maxOffset);
+        long[] candidates = seeds.candidates();
+        int n = size();
+        int[] rows = new int[n + 1];
+        for (long candidate : candidates) {
+            rows[seeds.first(candidate) + 1] += 1;
+        }
+        for (int a = 0; a < n; a++) {
+            rows[a + 1] += rows[a];
+        }
+        IntStream.range(0, (n + 1) / 2).parallel().forEach(k -> {
+            sweep(k, seeds, candidates, rows, minOverlap, floor, found);
+            if (n - 1 - k != k) {
+                sweep(n - 1 - k, seeds, candidates, rows, minOverlap, floor,
+                      found);
+            }
+        });
+        ArrayList<Depth> result = new ArrayList<>(found);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Add to FOUND the pairs in depth of message A with each later
+     *  message, as for find(MAXOFFSET, MINOVERLAP, THRESHOLD), where
+     *  MAXOFFSET is that of SEEDS.  The alignments of SEEDS in which A
+     *  is the first message, candidates ROWS[A] up to but not including
+     *  ROWS[A + 1] of CANDIDATES, are counted in full without a test on
+     *  their prefix.  Pairing row A with row size() - 1 - A gives each
+     *  thread an even share. */
+    private void sweep(int a, Seeds seeds, long[] candidates, int[] rows,
+                       int minOverlap, double threshold,
+                       ConcurrentLinkedQueue<Depth> found) {
+        int maxOffset = seeds.maxOffset();
+        long alignments = alignments(maxOffset);
+        int c = rows[a];
+        for (int b = a + 1; b < size(); b++) {
+            Depth best = null;
+            for (int d = -maxOffset; d <= maxOffset; d++) {
+                boolean seeded = c < rows[a + 1]
+                    && seeds.second(candidates[c]) == b
+                    && seeds.offset(candidates[c]) == d;
+                if (seeded) {
+                    c += 1;
+                }
+                int start = Math.max(0, d);
+                int end = Math.min(_lengths[a], _lengths[b] + d);
+                int overlap = end - start;
+                if (overlap < minOverlap) {
+                    continue;
+                }
+                int firstWord = start >>> 6;
+                int prefixEnd = Math.min(end,
+                                         (firstWord + PREFIX_WORDS) << 6);
+                int k = count(a, b, d, firstWord, firstWord + PREFIX_WORDS);
+                if (prefixEnd < end) {
+                    if (!seeded && z(k, prefixEnd - start) < PRUNE_Z) {
+                        continue;
+                    }
+                    k += count(a, b, d, firstWord + PREFIX_WORDS,
+                               _words[a]);
+                }
+                double z = z(k, overlap);
+                if (z >= threshold && (best == null || z > best.z())) {
+                    best = new Depth(a, b, d, overlap, k, z,
+                                     alignments * tail(z));
+                }
+            }
+            if (best != null) {
+                found.add(best);
+            }
+        }
+    }
+
+    /** An index of the seeds of my messages: for each position of each
+     *  message, the k-gram starting there and the block of positions
+     *  holding it.  Entries are longs holding a hash of the k-gram in
+     *  their high-order bits, then the block, the message, and the
+     *  position, and are sorted, so that the seeds that match within a
+     *  block, or in adjacent blocks, are next to each other.  Blocks are
+     *  one longer than the largest offset, so that two positions that
+     *  can be aligned are in the same or adjacent blocks. */
+    private class Seeds {
+
+        /** An index of the seeds of length K for offsets of at most
+         *  MAXOFFSET in size. */
+        Seeds(int k, int maxOffset) {
+            _maxOffset = maxOffset;
+            _block = maxOffset + 1;
+            int longest = 0;
+            long total = 0;
+            for (int length : _lengths) {
+                longest = Math.max(longest, length);
+                total += Math.max(0, length - k + 1);
+            }
+            _positionBits = bits(longest);
+            _messageBits = bits(size());
+            _blockShift = _positionBits + _messageBits;
+            _gramShift = _blockShift + bits(longest / _block + 1);
+            _offsetBits = bits(2 * maxOffset + 1);
+            if (63 - _gramShift < MIN_KEY_BITS
+                || 2 * _messageBits + _offsetBits > 63
+                || total > Integer.MAX_VALUE) {
+                throw error("corpus too large to index");
+            }
+            long[] entries = new long[(int) total];
+            int[] next = new int[size() + 1];
+            for (int m = 0; m < size(); m++) {
+                next[m + 1] = next[m] + Math.max(0, _lengths[m] - k + 1);
+            }
+            IntStream.range(0, size()).parallel().forEach(m -> {
+                char[] letters = _letters[m];
+                for (int i = 0; i + k <= letters.length; i++) {
+                    long hash = OFFSET;
+                    for (int j = i; j < i + k; j++) {
+                        hash = (hash ^ letters[j]) * PRIME;
+                    }
+                    hash ^= hash >>> 33;
+                    hash *= 0xff51afd7ed558ccdL;
+                    hash ^= hash >>> 33;
+                    entries[next[m] + i] = (hash >>> (_gramShift + 1)
+                                            << _gramShift)
+                        | ((long) (i / _block) << _blockShift)
+                        | ((long) m << _positionBits) | i;
+                }
+            });
+            Arrays.parallelSort(entries);
+            _entries = entries;
+        }
+
+        /** Return the largest offset in size of my alignments. */
+        int maxOffset() {
+            return _maxOffset;
+        }
+
+        /** Return the first message of CANDIDATE. */
+        int first(long candidate) {
+            return (int) (candidate >>> (_messageBits + _offsetBits));
+        }
+
+        /** Return the second message of CANDIDATE. */
+        int second(long candidate) {
+            return (int) (candidate >>> _offsetBits
+                          & ((1L << _messageBits) - 1));
+        }
+
+        /** Return the offset of the second message of CANDIDATE from the
+         *  first. */
+        int offset(long candidate) {
+            return (int) (candidate & ((1L << _offsetBits) - 1))
+                - _maxOffset;
+        }
+
+        /** Return the alignments at which two messages share a seed,
+         *  with offsets at most maxOffset() in size, in increasing order
+         *  and without repeats.  Each holds the numbers of its first and
+         *  second messages, the first the smaller, and the offset of the
+         *  second from the first, as read by first, second, and offset.
+         *  The sorted entries are joined in one pass, in pieces that
+         *  start where the k-gram changes, on all processors. */
+        long[] candidates() {
+            int pieces = 4 * Runtime.getRuntime().availableProcessors();
+            int[] bounds = new int[pieces + 1];
+            for (int p = 1; p <= pieces; p++) {
+                int e = Math.max(bounds[p - 1],
+                                 (int) ((long) _entries.length * p / pieces));
+                while (e > 0 && e < _entries.length
+                       && gram(_entries[e]) == gram(_entries[e - 1])) {
+                    e += 1;
+                }
+                bounds[p] = e;
+            }
+            long[][] found = new long[pieces][];
+            IntStream.range(0, pieces).parallel().forEach(p -> {
+                found[p] = join(bounds[p], bounds[p + 1]);
+            });
+            int total = 0;
+            for (long[] piece : found) {
+                total += piece.length;
+            }
+            long[] result = new long[total];
+            total = 0;
+            for (long[] piece : found) {
+                System.arraycopy(piece, 0, result, total, piece.length);
+                total += piece.length;
+            }
+            Arrays.parallelSort(result);
+            int unique = 0;
+            for (int c = 0; c < result.length; c++) {
+                if (unique == 0 || result[c] != result[unique - 1]) {
+                    result[unique] = result[c];
+                    unique += 1;
+                }
+            }
+            return Arrays.copyOf(result, unique);
+        }
+
+        /** Return the alignments, as for candidates(), of the matching
+         *  seeds among entries FROM up to but not including TO, which
+         *  start and end where the k-gram changes. */
+        private long[] join(int from, int to) {
+            long[] result = new long[64];
+            int size = 0;
+            for (int g = from, next; g < to; g = next) {
+                next = g + 1;
+                while (next < to && (_entries[next] >>> _blockShift)
+                       == (_entries[g] >>> _blockShift)) {
+                    next += 1;
+                }
+                int end = next;
+                if (end < to && gram(_entries[end]) == gram(_entries[g])
+                    && block(_entries[end]) == block(_entries[g]) + 1) {
+                    end += 1;
+                    while (end < to && (_entries[end] >>> _blockShift)
+                           == (_entries[next] >>> _blockShift)) {
+                        end += 1;
+                    }
+                }
+                for (int e = g; e < next; e++) {
+                    for (int f = e + 1; f < end; f++) {
+                        long candidate = candidate(_entries[e], _entries[f]);
+                        if (candidate < 0) {
+                            continue;
+                        }
+                        if (size == result.length) {
+                            result = Arrays.copyOf(result, 2 * size);
+                        }
+                        result[size] = candidate;
+                        size += 1;
+                    }
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        /** Return the alignment at which the seeds of entries E and F
+         *  line up, or -1 if they are in one message or too far apart. */
+        private long candidate(long e, long f) {
+            long positionMask = (1L << _positionBits) - 1;
+            long messageMask = (1L << _messageBits) - 1;
+            int m = (int) (e >>> _positionBits & messageMask);
+            int n = (int) (f >>> _positionBits & messageMask);
+            int d = (int) (e & positionMask) - (int) (f & positionMask);
+            if (m == n || Math.abs(d) > _maxOffset) {
+                return -1;
+            } else if (m > n) {
+                return candidate(f, e);
+            }
+            return ((long) m << (_messageBits + _offsetBits))
+                | ((long) n << _offsetBits) | (d + _maxOffset);
+        }
+
+        /** Return the hash of the k-gram of ENTRY. */
+        private long gram(long entry) {
+            return entry >>> _gramShift;
+        }
+
+        /** Return the block of ENTRY. */
+        private long block(long entry) {
+            return (entry >>> _blockShift)
+                & ((1L << (_gramShift - _blockShift)) - 1);
+        }
+
+        /** Largest offset in size, and the number of positions in a
+         *  block. */
+        private final int _maxOffset, _block;
+
+        /** Numbers of bits of an entry holding a position and a message
+         *  number, and the shifts of its block and k-gram.  Number of
+         *  bits of a candidate holding its offset. */
+        private final int _positionBits, _messageBits, _blockShift,
+            _gramShift, _offsetBits;
+
+        /** The entries, in increasing order. */
+        private final long[] _entries;
+    }
+
+    /** Return the number of bits needed to hold any value from 0 to
+     *  N - 1. */
+    private static int bits(int n) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(n, 1)
+                                                             - 1));
+    }
+
+    /** Return the number of coincidences between message A and message B
+     *  aligned at offset D, in words FROM up to but not including TO of
+     *  message A. */
+    private int count(int a, int b, int d, int from, int to) {
+        long[] maskA = _masks[a], maskB = _masks[b];
+        int wordsA = _words[a], wordsB = _words[b];
+        to = Math.min(to, wordsA);
+        int shift = Math.floorDiv(-d, 64), r = Math.floorMod(-d, 64);
+        int count = 0;
+        for (int w = from; w < to; w++) {
+            int q = w + shift;
+            if (q + 1 < 0 || q >= wordsB) {
+                continue;
+            }
+            long same = maskA[_planes * wordsA + w]
+                & bitsAt(maskB, _planes * wordsB, wordsB, q, r);
+            for (int p = 0; p < _planes && same != 0; p++) {
+                same &= ~(maskA[p * wordsA + w]
+                          ^ bitsAt(maskB, p * wordsB, wordsB, q, r));
+            }
+            count += Long.bitCount(same);
+        }
+        return count;
+    }
+
+    /** Return the 64 bits starting at bit R of word Q of the WORDS words
+     *  of MASK from index BASE on, taking bits outside them to be 0. */
+    private static long bitsAt(long[] mask, int base, int words, int q,
+                               int r) {
+        long result = 0;
+        if (q >= 0) {
+            result = mask[base + q] >>> r;
+        }
+        if (r != 0 && q + 1 < words) {
+            result |= mask[base + q + 1] << (64 - r);
+        }
+        return result;
+    }
+
+    /** Return the z-score of K coincidences among N aligned letters,
+     *  given the chance rate of coincidence of the corpus.  The counts are
+     *  nearly Poisson, with means too small for their tails to be normal,
+     *  so the score is taken on the square roots of the counts, whose
+     *  variance is 1/4 whatever the mean. */
+    private double z(int k, int n) {
+        return 2 * (Math.sqrt(k) - Math.sqrt(n * _chance));
+    }
+
+    /** Initial value and multiplier of the hash of a seed. */
+    private static final long OFFSET = 0xcbf29ce484222325L,
+        PRIME = 0x100000001b3L;
+
+    /** Number of bits in the index of a letter. */
+    private final int _planes;
+
+    /** Length of each message. */
+    private final int[] _lengths;
+
+    /** Number of 64-bit words in each of a message's bitsets. */
+    private final int[] _words;
+
+    /** For each message M, the bitset of the positions of the letters
+     *  whose indices have bit P set, in words P * _words[M] up to
+     *  (P + 1) * _words[M], followed by the bitset of all its
+     *  positions. */
+    private final long[][] _masks;
+
+    /** Index in the alphabet of each letter of each message. */
+    private final char[][] _letters;
+
+    /** Chance that two letters of the corpus coincide. */
+    private final double _chance;
+}
@@ -0,0 +1,191 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the DepthFinder class.
+ *  @author Josh Rubin
+ */
+public class DepthFinderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Letters drawn from to make plaintext, roughly in proportion to
+     *  their frequency in English. */
+    private static final String PLAIN =
+        "EEEEEEEEEEEETTTTTTTTTAAAAAAAAOOOOOOOIIIIIIINNNNNNNSSSSSSHHHHHH"
+        + "RRRRRRDDDDLLLLCCCUUUMMWWFFGGYYPPBVKJXQZ";
+
+    /** Return a random plaintext of LENGTH letters from RANDOM. */
+    private static String plaintext(Random random, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            result.append(PLAIN.charAt(random.nextInt(PLAIN.length())));
+        }
+        return result.toString();
+    }
+
+    /** Return a random key stream of LENGTH shifts from RANDOM. */
+    private static int[] keys(Random random, int length) {
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = random.nextInt(26);
+        }
+        return result;
+    }
+
+    /** Return TEXT enciphered with the key stream KEYS from index
+     *  START on. */
+    private static String encipher(String text, int[] keys, int start) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            result.append((char) ('A' + (text.charAt(i) - 'A'
+                                         + keys[start + i]) % 26));
+        }
+        return result.toString();
+    }
+
+    /** Return N random messages of 150 to 349 letters from RANDOM. */
+    private static List<String> corpus(Random random, int n) {
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int length = 150 + random.nextInt(200);
+            result.add(encipher(plaintext(random, length),
+                                keys(random, length), 0));
+        }
+        return result;
+    }
+
+    /** Return a random plaintext of LENGTH letters from RANDOM whose
+     *  letter J coincides with letter J + OFFSET of FIRST as often as
+     *  chance allows, but never in two consecutive places, so that
+     *  the two share no aligned seed longer than one letter. */
+    private static String singlyCoinciding(Random random, String first,
+                                           int offset, int length) {
+        StringBuilder result = new StringBuilder();
+        while (result.length() < length) {
+            int j = result.length();
+            char c = plaintext(random, 1).charAt(0);
+            if (j == 0 || c != first.charAt(j + offset)
+                || result.charAt(j - 1) != first.charAt(j + offset - 1)) {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void findsOverlappingKeys() {
+        Random random = new Random(39);
+        ArrayList<String> messages = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            int length = 150 + random.nextInt(150);
+            messages.add(encipher(plaintext(random, length),
+                                  keys(random, length), 0));
+        }
+        int[] shared = keys(random, 2200);
+        messages.set(5, encipher(plaintext(random, 2100), shared, 0));
+        messages.set(41, encipher(plaintext(random, 2000), shared, 7));
+        DepthFinder finder = new DepthFinder(new UpperCaseAlphabet(),
+                                             messages);
+        List<DepthFinder.Depth> found =
+            finder.find(DepthFinder.MAX_OFFSET, DepthFinder.MIN_OVERLAP,
+                        DepthFinder.THRESHOLD);
+        assertTrue(found.size() >= 1);
+        DepthFinder.Depth depth = found.get(0);
+        assertEquals(5, depth.first());
+        assertEquals(41, depth.second());
+        assertEquals(7, depth.offset());
+        int naive = 0;
+        for (int i = 7; i < 2007; i++) {
+            if (messages.get(5).charAt(i) == messages.get(41).charAt(i - 7)) {
+                naive += 1;
+            }
+        }
+        assertEquals(naive, depth.coincidences());
+    }
+
+    @Test
+    public void negativeOffsets() {
+        Random random = new Random(7);
+        int[] shared = keys(random, 2000);
+        List<String> messages = List.of(
+            encipher(plaintext(random, 1900), shared, 60),
+            encipher(plaintext(random, 1960), shared, 0),
+            encipher(plaintext(random, 500), keys(random, 500), 0));
+        List<DepthFinder.Depth> found =
+            new DepthFinder(new UpperCaseAlphabet(), messages)
+            .find(80, 40, 4.0);
+        assertEquals(1, found.size());
+        assertEquals(0, found.get(0).first());
+        assertEquals(1, found.get(0).second());
+        assertEquals(-60, found.get(0).offset());
+    }
+
+    @Test
+    public void randomCorpusReportsNothing() {
+        DepthFinder finder =
+            new DepthFinder(new UpperCaseAlphabet(),
+                            corpus(new Random(8), 600));
+        assertTrue(finder.threshold(DepthFinder.MAX_OFFSET)
+                   > DepthFinder.THRESHOLD + 1);
+        assertEquals(0, finder.find(DepthFinder.MAX_OFFSET,
+                                    DepthFinder.MIN_OVERLAP,
+                                    DepthFinder.THRESHOLD).size());
+    }
+
+    @Test
+    public void findsRepeatedTextInLargeCorpus() {
+        Random random = new Random(9);
+        List<String> messages = corpus(random, 800);
+        String header = plaintext(random, 40);
+        messages.set(300, "XYZ" + header + messages.get(300).substring(43));
+        messages.set(700, header + messages.get(700).substring(40));
+        DepthFinder finder = new DepthFinder(new UpperCaseAlphabet(),
+                                             messages);
+        assertTrue(finder.seedLength(DepthFinder.MAX_OFFSET) > 2);
+        List<DepthFinder.Depth> found =
+            finder.find(DepthFinder.MAX_OFFSET, DepthFinder.MIN_OVERLAP,
+                        DepthFinder.THRESHOLD);
+        assertEquals(1, found.size());
+        assertEquals(300, found.get(0).first());
+        assertEquals(700, found.get(0).second());
+        assertEquals(3, found.get(0).offset());
+        assertTrue(found.get(0).expected() < DepthFinder.FALSE_ALARMS);
+    }
+
+    @Test
+    public void findsDepthInLargeCorpus() {
+        Random random = new Random(10);
+        List<String> messages = corpus(random, 800);
+        int[] shared = keys(random, 4100);
+        String first = plaintext(random, 4005);
+        String second = singlyCoinciding(random, first, 5, 4000);
+        messages.set(120, encipher(first, shared, 0));
+        messages.set(650, encipher(second, shared, 5));
+        DepthFinder finder = new DepthFinder(new UpperCaseAlphabet(),
+                                             messages);
+        assertTrue(finder.seedLength(DepthFinder.MAX_OFFSET) > 2);
+        List<DepthFinder.Depth> found =
+            finder.find(DepthFinder.MAX_OFFSET, DepthFinder.MIN_OVERLAP,
+                        DepthFinder.THRESHOLD);
+        assertEquals(1, found.size());
+        assertEquals(120, found.get(0).first());
+        assertEquals(650, found.get(0).second());
+        assertEquals(5, found.get(0).offset());
+        assertTrue(found.get(0).z()
+                   >= finder.threshold(DepthFinder.MAX_OFFSET));
+    }
+}
@@ -0,0 +1,157 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Timing comparison of the conversion engines of Machine on randomly
+ *  wired machines of several shapes.
+ *  @author Josh Rubin
+ */
+final class EngineBenchmark {
+
+    /** Shapes of the machines timed, as {numRotors, numPawls}. */
+    private static final int[][] SHAPES = { {3, 2}, {5, 3}, {10, 9} };
+
+    /** Number of characters converted in each timed run. */
+    private static final int LENGTH = 200000;
+
+    /** Number of untimed runs before the timed ones. */
+    private static final int WARMUP = 3;
+
+    /** Number of timed runs, of which the fastest is reported. */
+    private static final int RUNS = 5;
+
+    /** Print the time per character taken by each engine on each shape
+     *  of machine.  ARGS is ignored. */
+    public static void main(String... args) {
+        Alphabet alphabet = new UpperCaseAlphabet();
+        Random random = new Random(61);
+        int[] message = new int[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            message[i] = random.nextInt(alphabet.size());
+        }
+        System.out.printf("%-8s %-6s %-10s %10s%n", "rotors", "pawls",
+                          "engine", "ns/char");
+        for (int[] shape : SHAPES) {
+            Machine machine = randomMachine(random, alphabet, shape[0],
+                                            shape[1]);
+            int[] expected = null;
+            for (Machine.Engine engine : Machine.Engine.values()) {
+                if (!machine.canUse(engine)) {
+                    continue;
+                }
+                machine.setEngine(engine);
+                int[] output = new int[LENGTH];
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run < WARMUP + RUNS; run++) {
+                    machine.setRotors(zeroSetting(alphabet, shape[0]));
+                    long start = System.nanoTime();
+                    for (int i = 0; i < LENGTH; i++) {
+                        output[i] = machine.convert(message[i]);
+                    }
+                    long time = System.nanoTime() - start;
+                    if (run >= WARMUP) {
+                        best = Math.min(best, time);
+                    }
+                }
+                if (expected == null) {
+                    expected = output;
+                } else if (!Arrays.equals(expected, output)) {
+                    throw error("engine %s disagrees with %s", engine,
+                                Machine.Engine.values()[0]);
+                }
+                System.out.printf("%-8d %-6d %-10s %10.1f%n", shape[0],
+                                  shape[1], engine, (double) best / LENGTH);
+            }
+        }
+    }
+
+    /** Return the setting that puts all NUMROTORS - 1 rotors at the first
+     *  character of ALPHABET. */
+    static String zeroSetting(Alphabet alphabet, int numRotors) {
+        char[] setting = new char[numRotors - 1];
+        Arrays.fill(setting, alphabet.toChar(0));
+        return new String(setting);
+    }
+
+    /** Return a machine over ALPHABET with NUMROTORS slots and PAWLS
+     *  pawls, holding rotors wired at random using RANDOM, with its rotors
+     *  inserted, set to the first character of ALPHABET, and a random
+     *  plugboard. */
+    static Machine randomMachine(Random random, Alphabet alphabet,
+                                 int numRotors, int pawls) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        names[0] = "R";
+        rotors.add(new Reflector("R", new Permutation(
+            randomCycles(random, alphabet, true), alphabet)));
+        for (int i = 1; i < numRotors; i++) {
+            names[i] = "S" + i;
+            Permutation perm = new Permutation(
+                randomCycles(random, alphabet, false), alphabet);
+            if (i >= numRotors - pawls) {
+                String notch = Character.toString(
+                    alphabet.toChar(random.nextInt(alphabet.size())));
+                rotors.add(new MovingRotor(names[i], perm, notch));
+            } else {
+                rotors.add(new FixedRotor(names[i], perm));
+            }
+        }
+        Machine machine = new Machine(alphabet, numRotors, pawls, rotors);
+        machine.insertRotors(names);
+        machine.setRotors(zeroSetting(alphabet, numRotors));
+        machine.setPlugboard(new Permutation(
+            randomPairs(random, alphabet, alphabet.size() / 4), alphabet));
+        return machine;
+    }
+
+    /** Return the cycles, in the notation of configuration files, of a
+     *  random permutation of ALPHABET chosen using RANDOM.  If REFLECTOR,
+     *  the permutation pairs up all the characters (the alphabet must
+     *  then have even size). */
+    static String randomCycles(Random random, Alphabet alphabet,
+                               boolean reflector) {
+        if (reflector) {
+            return randomPairs(random, alphabet, alphabet.size() / 2);
+        }
+        int[] order = shuffled(random, alphabet.size());
+        StringBuilder cycles = new StringBuilder();
+        int start = 0;
+        while (start < order.length) {
+            int end = start + 1 + random.nextInt(order.length - start);
+            cycles.append('(');
+            for (int i = start; i < end; i++) {
+                cycles.append(alphabet.toChar(order[i]));
+            }
+            cycles.append(") ");
+            start = end;
+        }
+        return cycles.toString();
+    }
+
+    /** Return N random disjoint pairs of characters of ALPHABET chosen
+     *  using RANDOM, in cycle notation. */
+    static String randomPairs(Random random, Alphabet alphabet, int n) {
+        int[] order = shuffled(random, alphabet.size());
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            cycles.append('(').append(alphabet.toChar(order[2 * i]))
+                .append(alphabet.toChar(order[2 * i + 1])).append(") ");
+        }
+        return cycles.toString();
+    }
+
+    /** Return the integers 0 .. N-1 in an order chosen using RANDOM. */
+    private static int[] shuffled(Random random, int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+}
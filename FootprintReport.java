@@ -0,0 +1,171 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** Report of the memory taken by the rotor wirings of a configuration in
+ *  three layouts: the original one, in which each permutation was a
+ *  HashMap from Character to Character; one int[] for each permutation
+ *  and its inverse; and the present one, in PackedTables, with the
+ *  rotors of a machine packed together in slot order.  Each layout is
+ *  charged for the objects that hold its tables as well as for the
+ *  tables: the Permutation in all three, and in the packed one also
+ *  the PackedTable.  The Rotor objects, which are the same in every
+ *  layout, are reported on a line of their own.  Sizes are estimated
+ *  for a 64-bit JVM with compressed references and compact strings.
+ *  @author Josh Rubin
+ */
+final class FootprintReport {
+
+    /** Bytes in an object header. */
+    private static final int OBJECT_HEADER = 12;
+
+    /** Bytes in a reference. */
+    private static final int REFERENCE = 4;
+
+    /** Bytes in a HashMap object, a HashMap.Node, and a Character. */
+    private static final int HASH_MAP = 48, NODE = 32, CHARACTER = 16;
+
+    /** Bytes in a String object and an ArrayList object, not counting
+     *  the arrays they refer to. */
+    private static final int STRING = 24, ARRAY_LIST = 24;
+
+    /** Capacity of an ArrayList's array after its first element is
+     *  added. */
+    private static final int ARRAY_LIST_CAPACITY = 10;
+
+    /** Bytes in a Permutation holding a HashMap: its alphabet and map. */
+    private static final long HASH_MAP_HOLDER =
+        PackedTable.align(OBJECT_HEADER + 2 * REFERENCE);
+
+    /** Bytes in a Permutation holding int[]s: its alphabet, the two
+     *  arrays, and its size. */
+    private static final long INT_ARRAY_HOLDER =
+        PackedTable.align(OBJECT_HEADER + 3 * REFERENCE + 4);
+
+    /** Bytes in a PackedTable object: its two array references. */
+    private static final long PACKED_TABLE =
+        PackedTable.align(OBJECT_HEADER + 2 * REFERENCE);
+
+    /** Bytes in a Permutation holding a PackedTable: its alphabet and
+     *  table, its size, and the bases of its map and inverse. */
+    private static final long PACKED_HOLDER =
+        PackedTable.align(OBJECT_HEADER + 2 * REFERENCE + 3 * 4);
+
+    /** Largest char value whose Character is cached rather than
+     *  allocated by boxing. */
+    private static final char CACHED_CHARACTERS = 127;
+
+    /** Print the report for the configuration file ARGS[0]. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 1) {
+                throw error("usage: FootprintReport CONFIG");
+            }
+            System.out.print(report(Main.readConfig(args[0])));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the report for CONFIG. */
+    static String report(Config config) {
+        Alphabet alphabet = config.alphabet();
+        ArrayList<Rotor> rotors = config.newMachine().allRotors();
+        long hashMaps = 0, intArrays = 0, packed = 0, rotorObjects = 0;
+        for (Rotor rotor : rotors) {
+            hashMaps += HASH_MAP_HOLDER + hashMapFootprint(alphabet);
+            intArrays += INT_ARRAY_HOLDER
+                + intArrayFootprint(alphabet.size());
+            packed += PACKED_HOLDER + PACKED_TABLE
+                + rotor.permutation().footprint();
+            rotorObjects += rotorFootprint(rotor);
+        }
+        int slots = config.numRotors();
+        long slotHashMaps =
+            slots * (HASH_MAP_HOLDER + hashMapFootprint(alphabet));
+        long slotIntArrays =
+            slots * (INT_ARRAY_HOLDER + intArrayFootprint(alphabet.size()));
+        long slotPacked = PACKED_TABLE
+            + new PackedTable(alphabet.size(), 2 * alphabet.size() * slots)
+            .footprint();
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%d rotors, %d slots, alphabet of %d%n",
+                                 rotors.size(), slots, alphabet.size()));
+        out.append(String.format("%-28s %12s %12s %12s%n", "",
+                                 "HashMap", "int[]", "packed"));
+        out.append(String.format("%-28s %12d %12d %12d%n",
+                                 "bytes, all permutations", hashMaps,
+                                 intArrays, packed));
+        out.append(String.format("%-28s %12d %12d %12d%n",
+                                 "bytes, wirings of a machine",
+                                 slotHashMaps, slotIntArrays, slotPacked));
+        out.append(String.format("%-28s %12d %12d %12d%n",
+                                 "bytes, rotor objects", rotorObjects,
+                                 rotorObjects, rotorObjects));
+        return out.toString();
+    }
+
+    /** Return the estimated bytes taken by a permutation of ALPHABET held
+     *  in a HashMap<Character, Character>, including its boxed
+     *  characters. */
+    static long hashMapFootprint(Alphabet alphabet) {
+        int n = alphabet.size();
+        int capacity = 1;
+        while (capacity < n / 0.75) {
+            capacity *= 2;
+        }
+        long result = HASH_MAP
+            + PackedTable.align(PackedTable.ARRAY_HEADER
+                                + (long) REFERENCE * capacity)
+            + (long) NODE * n;
+        for (int i = 0; i < n; i++) {
+            if (alphabet.toChar(i) > CACHED_CHARACTERS) {
+                result += 2 * CHARACTER;
+            }
+        }
+        return result;
+    }
+
+    /** Return the bytes taken by a permutation of N indices and its
+     *  inverse, held in two int[]s. */
+    static long intArrayFootprint(int n) {
+        return 2 * PackedTable.align(PackedTable.ARRAY_HEADER + 4L * n);
+    }
+
+    /** Return the estimated bytes taken by ROTOR itself, apart from its
+     *  permutation: the object, its name, and for a moving rotor its
+     *  list of notches. */
+    static long rotorFootprint(Rotor rotor) {
+        boolean moving = rotor instanceof MovingRotor;
+        long result = PackedTable.align(OBJECT_HEADER + 2 * REFERENCE + 4
+                                        + (moving ? REFERENCE : 0))
+            + STRING
+            + PackedTable.align(PackedTable.ARRAY_HEADER
+                                + rotor.name().length());
+        if (moving) {
+            int notches = 0;
+            int setting = rotor.setting();
+            for (int p = 0; p < rotor.size(); p++) {
+                rotor.set(p);
+                if (rotor.atNotch()) {
+                    notches += 1;
+                    if (rotor.alphabet().toChar(p) > CACHED_CHARACTERS) {
+                        result += CHARACTER;
+                    }
+                }
+            }
+            rotor.set(setting);
+            result += ARRAY_LIST;
+            if (notches > 0) {
+                result += PackedTable.align(
+                    PackedTable.ARRAY_HEADER + (long) REFERENCE
+                    * Math.max(notches, ARRAY_LIST_CAPACITY));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the FootprintReport class.
+ *  @author Josh Rubin
+ */
+public class FootprintReportTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the numbers on the line of REPORT that starts with LABEL,
+     *  one for each layout. */
+    private long[] row(String report, String label) {
+        for (String line : report.split("\n")) {
+            if (line.startsWith(label)) {
+                String[] words =
+                    line.substring(label.length()).trim().split(" +");
+                long[] result = new long[words.length];
+                for (int i = 0; i < words.length; i++) {
+                    result[i] = Long.parseLong(words[i]);
+                }
+                return result;
+            }
+        }
+        fail("no line " + label);
+        return null;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void packedSmallerThanHashMaps() {
+        Config config =
+            new Parser(new StringReader(navalConfig()), "test").config();
+        String report = FootprintReport.report(config);
+        assertTrue(report,
+                   report.startsWith("12 rotors, 5 slots, alphabet of 26"));
+        String header = report.split("\n")[1].trim();
+        assertEquals("HashMap int[] packed", header.replaceAll(" +", " "));
+        for (String label : new String[] { "bytes, all permutations",
+                                           "bytes, wirings of a machine" }) {
+            long[] bytes = row(report, label);
+            assertEquals(label, 3, bytes.length);
+            assertTrue(label, bytes[2] > 0);
+            assertTrue(label, bytes[2] < bytes[1]);
+            assertTrue(label, bytes[1] < bytes[0]);
+        }
+        long[] rotors = row(report, "bytes, rotor objects");
+        assertEquals(rotors[0], rotors[1]);
+        assertEquals(rotors[0], rotors[2]);
+    }
+
+}
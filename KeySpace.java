@@ -0,0 +1,265 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import static enigma.EnigmaException.*;
+
+/** The set of keys (rotor order and initial positions) that can be
+ *  given to a machine.  Slot 0 holds a reflector, the rightmost
+ *  numPawls() slots hold moving rotors, and the rest hold non-moving
+ *  rotors, each used at most once.  A key space may be constrained to
+ *  one reflector, to a subset of the other rotors, and to fixed
+ *  positions of some rotors.  Keys are numbered from 0 to size() - 1,
+ *  with all initial positions of one rotor order numbered
+ *  consecutively; the positions of the rotors that are not fixed are
+ *  the digits of the key, the rightmost rotor's being the least
+ *  significant.
+ *  @author Josh Rubin
+ */
+class KeySpace {
+
+    /** Value in the POSITIONS argument of the constructor for a rotor
+     *  whose position is not fixed. */
+    static final int ANY = -1;
+
+    /** The key space of MACHINE, drawing on all of its available
+     *  rotors. */
+    KeySpace(Machine machine) {
+        this(machine, null, null, null);
+    }
+
+    /** The key space of MACHINE, using only the reflector named REFLECTOR
+     *  and only the other rotors named in ROTORS, and with the rotor in
+     *  each slot K + 1 set to POSITIONS[K] unless that is ANY.  A null
+     *  REFLECTOR, ROTORS, or POSITIONS imposes no constraint. */
+    KeySpace(Machine machine, String reflector, Collection<String> rotors,
+             int[] positions) {
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _fixed = new int[_numRotors - 1];
+        if (positions == null) {
+            Arrays.fill(_fixed, ANY);
+        } else if (positions.length != _fixed.length) {
+            throw error("expected %d fixed positions", _fixed.length);
+        } else {
+            for (int i = 0; i < positions.length; i++) {
+                if (positions[i] != ANY
+                    && (positions[i] < 0
+                        || positions[i] >= _alphabet.size())) {
+                    throw error("bad fixed position %d", positions[i]);
+                }
+                _fixed[i] = positions[i];
+            }
+        }
+        ArrayList<String[]> orders = new ArrayList<>();
+        addOrders(machine, reflector, rotors, new String[_numRotors], 0,
+                  orders);
+        if (orders.isEmpty()) {
+            throw error("no rotor order fits this machine");
+        }
+        _orders = orders.toArray(new String[0][]);
+        long numPositions = 1;
+        for (int i = 0; i < _fixed.length; i++) {
+            if (_fixed[i] == ANY) {
+                numPositions = Math.multiplyExact(numPositions,
+                                                  _alphabet.size());
+            }
+        }
+        _numPositions = numPositions;
+        _size = Math.multiplyExact(numPositions, _orders.length);
+    }
+
+    /** Add to ORDERS every completion of ORDER whose slots from SLOT on
+     *  are filled from the rotors of MACHINE, using only the reflector
+     *  REFLECTOR and the other rotors in ROTORS (any, if null). */
+    private static void addOrders(Machine machine, String reflector,
+                                  Collection<String> rotors, String[] order,
+                                  int slot, ArrayList<String[]> orders) {
+        if (slot == order.length) {
+            orders.add(order.clone());
+            return;
+        }
+        boolean moving = slot >= order.length - machine.numPawls();
+        for (Rotor rotor : machine.allRotors()) {
+            boolean fits;
+            if (slot == 0) {
+                fits = rotor.reflecting()
+                    && (reflector == null || reflector.equals(rotor.name()));
+            } else {
+                fits = !rotor.reflecting() && rotor.rotates() == moving
+                    && (rotors == null || rotors.contains(rotor.name()));
+            }
+            for (int i = 1; i < slot && fits; i++) {
+                fits = !order[i].equals(rotor.name());
+            }
+            if (fits) {
+                order[slot] = rotor.name();
+                addOrders(machine, reflector, rotors, order, slot + 1,
+                          orders);
+            }
+        }
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the number of rotor orders. */
+    int numOrders() {
+        return _orders.length;
+    }
+
+    /** Return the number of initial positions of each rotor order. */
+    long numPositions() {
+        return _numPositions;
+    }
+
+    /** Return the number of the rotor order of KEY, from 0 to
+     *  numOrders() - 1. */
+    int order(long key) {
+        return (int) (key / _numPositions);
+    }
+
+    /** Return the rotor names of KEY, as for Machine.insertRotors. */
+    String[] rotors(long key) {
+        return _orders[order(key)];
+    }
+
+    /** Store the initial positions of KEY, as for
+     *  Machine.setRotors(int[]), into POSITIONS, and return POSITIONS. */
+    int[] positions(long key, int[] positions) {
+        long posn = key % _numPositions;
+        for (int i = _fixed.length - 1; i >= 0; i--) {
+            if (_fixed[i] == ANY) {
+                positions[i] = (int) (posn % _alphabet.size());
+                posn /= _alphabet.size();
+            } else {
+                positions[i] = _fixed[i];
+            }
+        }
+        return positions;
+    }
+
+    /** Return the initial positions of KEY, as for Machine.setRotors. */
+    String setting(long key) {
+        int[] positions = positions(key, new int[_fixed.length]);
+        char[] setting = new char[positions.length];
+        for (int i = 0; i < setting.length; i++) {
+            setting[i] = _alphabet.toChar(positions[i]);
+        }
+        return new String(setting);
+    }
+
+    /** Insert and set the rotors of MACHINE according to KEY. */
+    void apply(long key, Machine machine) {
+        machine.insertRotors(rotors(key));
+        machine.setRotors(positions(key, new int[_fixed.length]));
+    }
+
+    /** Return the setting line (without plugboard) describing KEY, in the
+     *  format of the input files. */
+    String describe(long key) {
+        return "* " + String.join(" ", rotors(key)) + " " + setting(key);
+    }
+
+    /** Return a spliterator over all my keys, in increasing order. */
+    Spliterator.OfLong spliterator() {
+        return new Keys(0, _size);
+    }
+
+    /** Return a sequential stream of all my keys, in increasing order.
+     *  Its parallel() version splits the keys evenly among threads. */
+    LongStream keys() {
+        return StreamSupport.longStream(spliterator(), false);
+    }
+
+    /** A spliterator over the keys K with LO <= K < HI.  It allocates
+     *  nothing as it advances, and splits into halves. */
+    private static class Keys implements Spliterator.OfLong {
+
+        /** A spliterator over the keys from LO up to but not including
+         *  HI. */
+        Keys(long lo, long hi) {
+            _next = lo;
+            _hi = hi;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (_next >= _hi) {
+                return false;
+            }
+            action.accept(_next);
+            _next += 1;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long hi = _hi;
+            for (long key = _next; key < hi; key += 1) {
+                action.accept(key);
+            }
+            _next = hi;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            long mid = _next + (_hi - _next) / 2;
+            if (mid == _next) {
+                return null;
+            }
+            Keys prefix = new Keys(_next, mid);
+            _next = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return _hi - _next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | NONNULL
+                | IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super Long> getComparator() {
+            return null;
+        }
+
+        /** The next key to be supplied. */
+        private long _next;
+
+        /** The bound on my keys. */
+        private final long _hi;
+    }
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** The fixed position of each rotor but the reflector, or ANY. */
+    private final int[] _fixed;
+
+    /** All rotor orders, in the order keys number them. */
+    private final String[][] _orders;
+
+    /** Number of initial positions of each rotor order. */
+    private final long _numPositions;
+
+    /** Total number of keys. */
+    private final long _size;
+}
@@ -0,0 +1,98 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Spliterator;
+
+/** The suite of all JUnit tests for the KeySpace class.
+ *  @author Josh Rubin
+ */
+public class KeySpaceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String CONFIG =
+        "ABCDEF 4 2\n"
+        + "N NA (ABC)\n"
+        + "P MA (ABC) (DE)\n"
+        + "Q MC (AFEDCB)\n"
+        + "S MF (AD) (BF) (CE)\n"
+        + "X R (AB) (CD) (EF)\n"
+        + "Y R (AF) (BE) (CD)\n";
+
+    /** Return a new machine configured by CONFIG. */
+    private Machine machine() {
+        return new Parser(new StringReader(CONFIG), "test").config()
+            .newMachine();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void unconstrained() {
+        KeySpace keys = new KeySpace(machine());
+        assertEquals(2 * 3 * 2, keys.numOrders());
+        assertEquals(6 * 6 * 6, keys.numPositions());
+        assertEquals(12 * 216, keys.size());
+        assertEquals("* X N P Q AAA", keys.describe(0));
+        assertEquals("* X N P Q AAF", keys.describe(5));
+        assertEquals("* X N P Q ABA", keys.describe(6));
+        assertEquals("* X N P S AAA", keys.describe(216));
+        assertEquals(keys.size(), keys.keys().count());
+    }
+
+    @Test
+    public void constrained() {
+        Machine machine = machine();
+        KeySpace keys = new KeySpace(machine, "Y", Arrays.asList("N", "Q",
+                                                                 "S"),
+                                     new int[] { KeySpace.ANY, 3,
+                                                 KeySpace.ANY });
+        assertEquals(2, keys.numOrders());
+        assertEquals(72, keys.size());
+        assertEquals("* Y N Q S ADA", keys.describe(0));
+        assertEquals("* Y N Q S FDF", keys.describe(35));
+        assertEquals("* Y N S Q ADA", keys.describe(36));
+        Machine other = machine();
+        Permutation plugboard = new Permutation("(AC)", machine.alphabet());
+        machine.setPlugboard(plugboard);
+        other.setPlugboard(plugboard);
+        int[] positions = new int[3];
+        for (long key = 0; key < keys.size(); key += 1) {
+            keys.positions(key, positions);
+            assertEquals(3, positions[1]);
+            keys.apply(key, machine);
+            other.insertRotors(keys.rotors(key));
+            other.setRotors(keys.setting(key));
+            assertEquals(other.convert("ABCDEFFEDCBA"),
+                         machine.convert("ABCDEFFEDCBA"));
+        }
+    }
+
+    @Test
+    public void splitsEvenly() {
+        KeySpace keys = new KeySpace(machine());
+        Spliterator.OfLong all = keys.spliterator();
+        Spliterator.OfLong prefix = all.trySplit();
+        assertEquals(keys.size() / 2, prefix.estimateSize());
+        assertEquals(keys.size() / 2, all.estimateSize());
+        long n = keys.size();
+        assertEquals(n * (n - 1) / 2, keys.keys().parallel().sum());
+        assertEquals(keys.keys().filter(k -> k % 7 == 3).count(),
+                     keys.keys().parallel().filter(k -> k % 7 == 3).count());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void noOrderFits() {
+        new KeySpace(machine(), "Z", null, null);
+    }
+}
@@ -1,6 +1,7 @@
 package enigma;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import static enigma.EnigmaException.*;
 
@@ -9,6 +10,50 @@ import static enigma.EnigmaException.*;
  */
 class Machine {
 
+    /** The ways a machine can compute the permutation its rotors perform
+     *  on a character.  All produce identical results. */
+    enum Engine {
+        /** Pass each character through each moving rotor in turn, and
+         *  through one table for the stationary slots and reflector. */
+        WALK,
+        /** Pass each character through the rightmost rotor and one table
+         *  for everything to its left.  That table is the last of a stack
+         *  of compositions, one for each moving rotor but the rightmost,
+         *  of that rotor and everything to its left, so that a step of a
+         *  rotor recomposes only it and the rotors to its right. */
+        COMPOSED,
+        /** Look up each character in a table, built once for each rotor
+         *  order and plugboard, of the whole machine's permutation at
+         *  every combination of moving-rotor positions, together with the
+         *  combination that follows each.  Available only when the table
+         *  has at most MAX_TABLE_SIZE entries. */
+        TABLE,
+        /** Pass each character through the moving rotors and the table
+         *  for the rest in one loop over primitive arrays, compiled once
+         *  for each rotor order and plugboard: the wirings, notches, and
+         *  kinds of the rotors under my pawls, their positions, and the
+         *  plugboard.  No Rotor methods are called per character, so the
+         *  loop sees no dispatch on the rotor classes. */
+        KERNEL
+    }
+
+    /** Largest number of entries allowed in the table of Engine.TABLE. */
+    static final int MAX_TABLE_SIZE = 1 << 24;
+
+    /** Number of characters a machine is assumed to convert when an
+     *  engine is chosen without knowing how many it will. */
+    static final long DEFAULT_VOLUME = 1 << 16;
+
+    /** Number of characters each engine converts in each run that times
+     *  it during calibration. */
+    static final int CALIBRATION_LENGTH = 10000;
+
+    /** Number of rounds of calibration, each of which times each engine
+     *  once.  The engines take turns, so that none is timed only while
+     *  the code it shares with the others is still being compiled, and
+     *  each is credited with its fastest run. */
+    static final int CALIBRATION_ROUNDS = 4;
+
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
      *  available rotors. */
@@ -19,6 +64,7 @@ class Machine {
         _pawls = pawls;
         _allRotors = allRotors;
         _rotors = new Rotor[numRotors];
+        _storeIndex = new int[numRotors];
 
     }
 
@@ -43,26 +89,360 @@ class Machine {
                 }
             }
         }
+        syncRotors();
+        _table = null;
+        _state = -1;
+        _kernelLoaded = false;
+        packWiring();
+        foldTurnaround();
     }
 
     /** Set my rotors according to SETTING, which must be a string of four
      *  upper-case letters. The first letter refers to the leftmost
      *  rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        boolean refold = _turnaround == null;
+        int firstMoving = _rotors.length - _pawls;
         for (int i = 0; i < setting.length(); i++) {
-            _rotors[i + 1].set(setting.charAt(i));
+            Rotor rotor = _rotors[i + 1];
+            int before = rotor.setting();
+            rotor.set(setting.charAt(i));
+            refold |= i + 1 < firstMoving && rotor.setting() != before;
         }
+        rotorsSet(refold);
+    }
+
+    /** Set my rotors to POSITIONS, which gives the position of each rotor
+     *  (not counting the reflector) as an index into my alphabet, leftmost
+     *  first, as for setRotors(String). */
+    void setRotors(int[] positions) {
+        boolean refold = _turnaround == null;
+        int firstMoving = _rotors.length - _pawls;
+        for (int i = 0; i < positions.length; i++) {
+            Rotor rotor = _rotors[i + 1];
+            refold |= i + 1 < firstMoving && rotor.setting() != positions[i];
+            rotor.set(positions[i]);
+        }
+        rotorsSet(refold);
+    }
+
+    /** Bring my derived state up to date after my rotors have been set,
+     *  recomputing _turnaround only if REFOLD, because a rotor that
+     *  never moves has changed position.  Repositioning only the moving
+     *  rotors, as for each message under one day key, thus keeps every
+     *  table. */
+    private void rotorsSet(boolean refold) {
+        _rotorsStale = false;
+        _state = -1;
+        _kernelLoaded = false;
+        _composed = 0;
+        if (refold) {
+            foldTurnaround();
+        }
+    }
+
+    /** Pack the wirings of the rotors in my slots, in slot order, into
+     *  _wiring: for slot K, the rotor's permutation at setting 0 from
+     *  index 2 * K * size on, and its inverse from (2 * K + 1) * size
+     *  on.  Empty slots are left as zeros.  If I use a rotor table store,
+     *  also record the number in it of the rotor in each slot. */
+    private void packWiring() {
+        int size = _alphabet.size();
+        PackedTable wiring = new PackedTable(size, 2 * size * _rotors.length);
+        for (int i = 0; i < _rotors.length; i++) {
+            if (_rotors[i] == null) {
+                continue;
+            }
+            if (_store != null) {
+                _storeIndex[i] = _store.rotorIndex(_rotors[i].name());
+            }
+            Permutation perm = _rotors[i].permutation();
+            for (int c = 0; c < size; c++) {
+                wiring.set(2 * i * size + c, perm.permute(c));
+                wiring.set((2 * i + 1) * size + c, perm.invert(c));
+            }
+        }
+        _wiring = wiring;
+        _kernel = null;
+    }
+
+    /** Read the conversions of my rotors from STORE, which must hold
+     *  tables for all my available rotors, rather than from my own packed
+     *  wirings.  If STORE is null, go back to my own wirings. */
+    void useStore(RotorTableStore store) {
+        if (store == null) {
+            _store = null;
+            return;
+        }
+        int size = _alphabet.size();
+        if (store.alphabetSize() != size) {
+            throw error("rotor table store has the wrong alphabet");
+        }
+        for (Rotor rotor : _allRotors) {
+            int k = store.rotorIndex(rotor.name());
+            for (int c = 0; c < size && k >= 0; c++) {
+                if (store.forward(k, 0, c) != rotor.permutation().permute(c)) {
+                    k = -1;
+                }
+            }
+            if (k < 0) {
+                throw error("rotor table store does not match rotor %s",
+                            rotor.name());
+            }
+        }
+        _store = store;
+        packWiring();
+    }
+
+    /** Return the number of bytes taken by the packed wirings of the
+     *  rotors in my slots. */
+    long wiringFootprint() {
+        return _wiring == null ? 0 : _wiring.footprint();
+    }
+
+    /** Compose the rotors in my slots to the left of the pawls, which
+     *  never move once set, into _turnaround, and discard _layers.  Leaves
+     *  _turnaround null if any of those slots is empty.  Discards _table
+     *  if _turnaround changes. */
+    private void foldTurnaround() {
+        _composed = 0;
+        int firstMoving = numRotors() - numPawls();
+        for (int i = 0; i < firstMoving; i++) {
+            if (_rotors[i] == null) {
+                _turnaround = null;
+                _table = null;
+                return;
+            }
+        }
+        int[] turnaround = new int[_alphabet.size()];
+        for (int c = 0; c < turnaround.length; c++) {
+            int e = c;
+            for (int i = firstMoving - 1; i >= 0; i--) {
+                e = _rotors[i].convertForward(e);
+            }
+            for (int i = 1; i < firstMoving; i++) {
+                e = _rotors[i].convertBackward(e);
+            }
+            turnaround[c] = e;
+        }
+        if (!Arrays.equals(turnaround, _turnaround)) {
+            _table = null;
+        }
+        _turnaround = turnaround;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        if (plugboard != _plugboard) {
+            _table = null;
+            _plug = null;
+        }
         _plugboard = plugboard;
     }
 
+    /** Return the engine I use to convert characters. */
+    Engine engine() {
+        return _engine;
+    }
+
+    /** Return true iff I can convert characters using ENGINE. */
+    boolean canUse(Engine engine) {
+        return engine != Engine.TABLE || tableSize() <= MAX_TABLE_SIZE;
+    }
+
+    /** Return the number of entries in the table of Engine.TABLE, or
+     *  MAX_TABLE_SIZE + 1 if that is larger. */
+    private long tableSize() {
+        long entries = _alphabet.size();
+        for (int i = 0; i < _pawls; i++) {
+            entries *= _alphabet.size();
+            if (entries > MAX_TABLE_SIZE) {
+                return MAX_TABLE_SIZE + 1;
+            }
+        }
+        return entries;
+    }
+
+    /** Choose and set the engine suited to my shape for converting about
+     *  EXPECTED characters (DEFAULT_VOLUME if EXPECTED is negative), and
+     *  return it.  Engine.TABLE is chosen when its table has no more
+     *  entries than EXPECTED, so that building it pays for itself, and
+     *  Engine.KERNEL otherwise: like WALK, it folds the stationary rotors
+     *  into one table and holds up for any size of alphabet, and it costs
+     *  almost nothing to compile.  If CALIBRATE, the choice is revisited
+     *  by calibrateEngine once my rotors and plugboard are first set.  A
+     *  chosen Engine.TABLE gives way to Engine.KERNEL if a change of rotors
+     *  or plugboard discards its table before it has converted as many
+     *  characters as the table has entries. */
+    Engine chooseEngine(long expected, boolean calibrate) {
+        _expected = expected < 0 ? DEFAULT_VOLUME : expected;
+        Engine engine = Engine.KERNEL;
+        if (tableSize() <= _expected && canUse(Engine.TABLE)) {
+            engine = Engine.TABLE;
+        }
+        setEngine(engine);
+        _calibrationPending = calibrate;
+        _chosen = true;
+        _fellBack = false;
+        _calibration = null;
+        return engine;
+    }
+
+    /** If chooseEngine asked for calibration and it has not yet been
+     *  done, time each engine that could pay for itself on my present
+     *  rotors and plugboard, and switch to the one whose setup time and
+     *  time per character give the least total for the expected number
+     *  of characters.  My rotors are left where they were. */
+    void calibrateEngine() {
+        if (!_calibrationPending) {
+            return;
+        }
+        _calibrationPending = false;
+        syncRotors();
+        int[] positions = new int[_rotors.length - 1];
+        for (int i = 1; i < _rotors.length; i++) {
+            positions[i - 1] = _rotors[i].setting();
+        }
+        Engine original = _engine;
+        Engine[] engines = Engine.values();
+        long[] setup = new long[engines.length];
+        long[] best = new long[engines.length];
+        Arrays.fill(best, Long.MAX_VALUE);
+        for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+            for (Engine engine : engines) {
+                if (!canUse(engine)
+                    || engine == Engine.TABLE && tableSize() > _expected) {
+                    continue;
+                }
+                setEngine(engine);
+                if (engine == Engine.TABLE && _table == null) {
+                    long start = System.nanoTime();
+                    buildTable();
+                    setup[engine.ordinal()] = System.nanoTime() - start;
+                }
+                best[engine.ordinal()] = Math.min(best[engine.ordinal()],
+                                                  timeConversions(positions));
+            }
+        }
+        StringBuilder report = new StringBuilder("calibrated ns/char:");
+        Engine choice = original;
+        double choiceCost = Double.MAX_VALUE;
+        for (Engine engine : engines) {
+            if (best[engine.ordinal()] == Long.MAX_VALUE) {
+                continue;
+            }
+            double perChar =
+                (double) best[engine.ordinal()] / CALIBRATION_LENGTH;
+            double cost = setup[engine.ordinal()] + perChar * _expected;
+            report.append(String.format(" %s %.1f", engine, perChar));
+            if (cost < choiceCost) {
+                choice = engine;
+                choiceCost = cost;
+            }
+        }
+        setEngine(choice);
+        setRotors(positions);
+        _chosen = true;
+        _calibration = report.toString();
+    }
+
+    /** Return the nanoseconds taken to convert CALIBRATION_LENGTH
+     *  characters starting with my rotors at POSITIONS. */
+    private long timeConversions(int[] positions) {
+        setRotors(positions);
+        int size = _alphabet.size();
+        int sum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < CALIBRATION_LENGTH; i++) {
+            sum += convert(i % size);
+        }
+        long time = System.nanoTime() - start;
+        return sum < 0 ? 0 : time;
+    }
+
+    /** Return a description of the engine I use and how it was chosen,
+     *  or of the engine alone if it was not chosen by chooseEngine. */
+    String engineReport() {
+        String report = "engine " + _engine;
+        if (_chosen) {
+            report += String.format(" for alphabet of %d, %d rotors, "
+                                    + "%d pawls, about %d characters",
+                                    _alphabet.size(), _numRotors, _pawls,
+                                    _expected);
+        }
+        if (_calibration != null) {
+            report += "; " + _calibration;
+        }
+        if (_fellBack) {
+            report += "; switched from TABLE, whose tables were rebuilt "
+                + "before paying for themselves";
+        }
+        return report;
+    }
+
+    /** Convert characters using ENGINE from now on. */
+    void setEngine(Engine engine) {
+        if (!canUse(engine)) {
+            throw error("machine too large for engine %s", engine);
+        }
+        syncRotors();
+        _engine = engine;
+        _chosen = _fellBack = false;
+        _composed = 0;
+        _state = -1;
+        _kernelLoaded = false;
+    }
+
+    /** Return all the rotors available to me. */
+    ArrayList<Rotor> allRotors() {
+        return _allRotors;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        if (_engine == Engine.TABLE) {
+            if (_table == null) {
+                if (_chosen && _next != null && _tableUses < tableSize()) {
+                    setEngine(Engine.KERNEL);
+                    _chosen = _fellBack = true;
+                    return convert(c);
+                }
+                buildTable();
+            }
+            if (_state < 0) {
+                _state = state();
+            }
+            _state = _next[_state];
+            _tableUses += 1;
+            _rotorsStale = true;
+            return _table[_state * _alphabet.size() + c];
+        }
+        if (_engine == Engine.KERNEL) {
+            return convertKernel(c);
+        }
+        advance();
+        c = _plugboard.permute(c);
+        c = convertRotors(c);
+        c = _plugboard.permute(c);
+        return c;
+    }
+
+    /** Advance my rotors one step, as happens before each character
+     *  is converted. */
+    void advance() {
+        syncRotors();
         boolean[] rotorMoves = new boolean[_rotors.length];
         int movingRotors = numPawls();
         boolean[] rotorsThatMove = new boolean[_rotors.length];
@@ -86,19 +466,371 @@ class Machine {
         for (int i = _rotors.length - numPawls(); i < _rotors.length; i++) {
             if (rotorMoves[i]) {
                 _rotors[i].advance();
+                if (i < _rotors.length - 1) {
+                    _composed = Math.min(_composed,
+                                         i - _rotors.length + _pawls);
+                }
             }
         }
-        c = _plugboard.permute(c);
-        for (int i = _rotors.length - 1; i >= 0; i--) {
-            c = _rotors[i].convertForward(c);
+        _kernelLoaded = false;
+    }
+
+    /** Advance my rotors STEPS steps, leaving them as STEPS calls of
+     *  advance() would, but without taking each step.  While no rotor
+     *  under a pawl but the rightmost is at a notch, only the rightmost
+     *  moves, so it is moved at once to the next position at which it
+     *  is at a notch; only the steps from there, and any double steps,
+     *  are taken one by one, over arrays of positions and notches as in
+     *  Engine.KERNEL.  The cost is thus about one step for each notch
+     *  the rightmost rotor passes, rather than one for each of STEPS. */
+    void advance(long steps) {
+        syncRotors();
+        int size = _alphabet.size();
+        int first = _rotors.length - _pawls, last = _rotors.length - 1;
+        int[] pos = new int[_rotors.length];
+        boolean[] rotates = new boolean[_rotors.length];
+        boolean[][] notches = new boolean[_rotors.length][size];
+        for (int i = first; i <= last; i++) {
+            Rotor rotor = _rotors[i];
+            pos[i] = rotor.setting();
+            rotates[i] = rotor.rotates();
+            for (int p = 0; p < size && i > first; p++) {
+                rotor.set(p);
+                notches[i][p] = rotor.atNotch();
+            }
+            rotor.set(pos[i]);
         }
-        for (int i = 1; i < _rotors.length; i++) {
-            c = _rotors[i].convertBackward(c);
+        long[] toNotch = new long[size];
+        Arrays.fill(toNotch, Long.MAX_VALUE);
+        for (int p = 2 * size - 1; p >= 0; p--) {
+            long next = toNotch[(p + 1) % size];
+            if (notches[last][p % size]) {
+                toNotch[p % size] = 0;
+            } else if (next != Long.MAX_VALUE) {
+                toNotch[p % size] = next + 1;
+            }
+        }
+        while (steps > 0 && _pawls > 0) {
+            boolean alone = true;
+            for (int i = first + 1; i < last; i++) {
+                alone &= !notches[i][pos[i]];
+            }
+            if (alone) {
+                if (!rotates[last]) {
+                    break;
+                }
+                long gap = Math.min(toNotch[pos[last]], steps);
+                pos[last] = (int) ((pos[last] + gap) % size);
+                steps -= gap;
+                if (steps == 0) {
+                    break;
+                }
+            }
+            boolean carry = false;
+            for (int i = last; i >= first; i--) {
+                boolean notch = i > first && notches[i][pos[i]];
+                if ((notch || carry || i == last) && rotates[i]) {
+                    pos[i] = pos[i] + 1 == size ? 0 : pos[i] + 1;
+                }
+                carry = notch;
+            }
+            steps -= 1;
+        }
+        for (int i = first; i <= last; i++) {
+            _rotors[i].set(pos[i]);
+        }
+        rotorsSet(false);
+    }
+
+    /** Convert in place the characters of TEXT in each range of RANGES,
+     *  each a pair {START, END} holding those from START up to but not
+     *  including END, as convert(String) would convert them as part of
+     *  all of TEXT after SETTING is applied to me.  The ranges must not
+     *  overlap, but may come in any order.  Stepping does not depend on
+     *  the characters converted, so the machine is brought to the state
+     *  at the start of each range by advance(long), and the cost is that
+     *  of converting the ranges alone, with only a small part for the
+     *  characters between them.  Leaves my rotors as they are after the
+     *  last character of the last range.  Every range and every
+     *  character in one is checked first, so that on an error neither
+     *  TEXT nor I have been changed. */
+    void convertRanges(Setting setting, char[] text, int[][] ranges) {
+        for (int[] range : ranges) {
+            if (range == null || range.length != 2) {
+                throw error("bad range %s", Arrays.toString(range));
+            }
+        }
+        int[][] sorted = ranges.clone();
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a[0], b[0]));
+        int at = 0;
+        for (int[] range : sorted) {
+            if (range[0] < at || range[1] < range[0]
+                || range[1] > text.length) {
+                throw error("bad or overlapping range %s",
+                            Arrays.toString(range));
+            }
+            for (int i = range[0]; i < range[1]; i++) {
+                if (!_alphabet.contains(text[i])) {
+                    throw error("character %c at %d not in alphabet",
+                                text[i], i);
+                }
+            }
+            at = range[1];
+        }
+        setting.applyTo(this);
+        at = 0;
+        for (int[] range : sorted) {
+            advance(range[0] - at);
+            for (int i = range[0]; i < range[1]; i++) {
+                text[i] = _alphabet.toChar(convert(_alphabet.toInt(text[i])));
+            }
+            at = range[1];
+        }
+    }
+
+    /** Return the conversion of C, after first advancing the machine, as
+     *  for convert(C), using Engine.KERNEL.  The rotors under my pawls
+     *  step as advance() moves them: each at a notch moves, with the
+     *  rotor to its left, if that rotor is also under a pawl, and the
+     *  rightmost always moves. */
+    private int convertKernel(int c) {
+        if (_kernel == null) {
+            compileKernel();
+        }
+        if (_plug == null) {
+            int[] plug = new int[_alphabet.size()];
+            for (int k = 0; k < plug.length; k++) {
+                plug[k] = _plugboard.permute(k);
+            }
+            _plug = plug;
+        }
+        if (!_kernelLoaded) {
+            for (int i = _rotors.length - _pawls; i < _rotors.length; i++) {
+                _positions[i] = _rotors[i].setting();
+            }
+            _kernelLoaded = true;
+        }
+        int size = _alphabet.size();
+        int first = _rotors.length - _pawls, last = _rotors.length - 1;
+        int[] kernel = _kernel, positions = _positions;
+        boolean[] notches = _notches, rotates = _rotates;
+        boolean carry = false;
+        for (int i = last; i >= first; i--) {
+            boolean notch = i > first && notches[i * size + positions[i]];
+            if ((notch || carry || i == last) && rotates[i]) {
+                int p = positions[i] + 1;
+                positions[i] = p == size ? 0 : p;
+            }
+            carry = notch;
+        }
+        _rotorsStale = true;
+        _composed = 0;
+        c = _plug[c];
+        for (int i = last; i >= first; i--) {
+            int p = positions[i], x = c + p;
+            int e = kernel[2 * i * size + (x >= size ? x - size : x)] - p;
+            c = e < 0 ? e + size : e;
+        }
+        c = _turnaround[c];
+        for (int i = first; i <= last; i++) {
+            int p = positions[i], x = c + p;
+            int e = kernel[(2 * i + 1) * size + (x >= size ? x - size : x)]
+                - p;
+            c = e < 0 ? e + size : e;
+        }
+        return _plug[c];
+    }
+
+    /** Compile the arrays of Engine.KERNEL for my present rotors: the
+     *  wirings of the rotors under my pawls, laid out as in _wiring,
+     *  whether each rotates, and whether each is at a notch in each
+     *  position.  The plugboard's array is made separately, so that a
+     *  change of plugboard alone costs only that. */
+    private void compileKernel() {
+        syncRotors();
+        int size = _alphabet.size();
+        int[] kernel = new int[2 * size * _rotors.length];
+        boolean[] notches = new boolean[size * _rotors.length];
+        boolean[] rotates = new boolean[_rotors.length];
+        for (int i = _rotors.length - _pawls; i < _rotors.length; i++) {
+            Rotor rotor = _rotors[i];
+            for (int k = 2 * i * size; k < 2 * (i + 1) * size; k++) {
+                kernel[k] = _wiring.get(k);
+            }
+            rotates[i] = rotor.rotates();
+            if (rotates[i]) {
+                int setting = rotor.setting();
+                for (int p = 0; p < size; p++) {
+                    rotor.set(p);
+                    notches[i * size + p] = rotor.atNotch();
+                }
+                rotor.set(setting);
+            }
+        }
+        _notches = notches;
+        _rotates = rotates;
+        _positions = new int[_rotors.length];
+        _kernelLoaded = false;
+        _kernel = kernel;
+    }
+
+    /** Returns the result of passing C (an index in the range
+     *  0..alphabet size - 1) through my rotors and reflector at their
+     *  current settings, bypassing the plugboard and without advancing
+     *  the machine. */
+    int convertRotors(int c) {
+        syncRotors();
+        if (_engine == Engine.COMPOSED && _pawls > 0) {
+            int fast = _rotors.length - 1;
+            if (_composed < _pawls - 1) {
+                composeLayers();
+            }
+            int[] slow = _turnaround;
+            int offset = 0;
+            if (_pawls > 1) {
+                slow = _layers;
+                offset = (_pawls - 2) * _alphabet.size();
+            }
+            return backward(fast, slow[offset + forward(fast, c)]);
+        }
+        int firstMoving = _rotors.length - _pawls;
+        for (int i = _rotors.length - 1; i >= firstMoving; i--) {
+            c = forward(i, c);
+        }
+        c = _turnaround[c];
+        for (int i = firstMoving; i < _rotors.length; i++) {
+            c = backward(i, c);
         }
-        c = _plugboard.permute(c);
         return c;
     }
 
+    /** Return the conversion of C by the rotor in slot SLOT at its
+     *  current setting, as for Rotor.convertForward, using _wiring. */
+    private int forward(int slot, int c) {
+        return forward(slot, _rotors[slot].setting(), c);
+    }
+
+    /** Return the conversion of C by the rotor in slot SLOT at setting
+     *  SETTING, using _wiring. */
+    private int forward(int slot, int setting, int c) {
+        int size = _alphabet.size();
+        if (_store != null) {
+            return _store.forward(_storeIndex[slot], setting, c);
+        }
+        int e = _wiring.get(2 * slot * size + (c + setting) % size) - setting;
+        return e < 0 ? e + size : e;
+    }
+
+    /** Return the conversion of C by the inverse of the rotor in slot
+     *  SLOT at its current setting, as for Rotor.convertBackward, using
+     *  _wiring. */
+    private int backward(int slot, int c) {
+        return backward(slot, _rotors[slot].setting(), c);
+    }
+
+    /** Return the conversion of C by the inverse of the rotor in slot
+     *  SLOT at setting SETTING, using _wiring. */
+    private int backward(int slot, int setting, int c) {
+        int size = _alphabet.size();
+        if (_store != null) {
+            return _store.backward(_storeIndex[slot], setting, c);
+        }
+        int e = _wiring.get((2 * slot + 1) * size + (c + setting) % size)
+            - setting;
+        return e < 0 ? e + size : e;
+    }
+
+    /** Return the number that Engine.TABLE uses for the current positions
+     *  of the rotors under my pawls. */
+    private int state() {
+        int state = 0;
+        for (int i = _rotors.length - _pawls; i < _rotors.length; i++) {
+            state = state * _alphabet.size() + _rotors[i].setting();
+        }
+        return state;
+    }
+
+    /** Set the rotors under my pawls to the positions numbered STATE by
+     *  state(). */
+    private void setState(int state) {
+        for (int i = _rotors.length - 1; i >= _rotors.length - _pawls; i--) {
+            _rotors[i].set(state % _alphabet.size());
+            state /= _alphabet.size();
+        }
+    }
+
+    /** If Engine.TABLE has moved my rotors since they were last set, set
+     *  them to the positions it has reached. */
+    private void syncRotors() {
+        if (_rotorsStale) {
+            _rotorsStale = false;
+            if (_engine == Engine.KERNEL) {
+                for (int i = _rotors.length - _pawls; i < _rotors.length;
+                     i++) {
+                    _rotors[i].set(_positions[i]);
+                }
+            } else {
+                setState(_state);
+            }
+        }
+    }
+
+    /** Fill _table and _next for Engine.TABLE by stepping through every
+     *  combination of positions of the rotors under my pawls, leaving the
+     *  rotors where they were. */
+    private void buildTable() {
+        syncRotors();
+        int size = _alphabet.size();
+        int start = state();
+        int numStates = 1;
+        for (int i = 0; i < _pawls; i++) {
+            numStates *= size;
+        }
+        int[] table = new int[numStates * size];
+        int[] next = new int[numStates];
+        for (int s = 0; s < numStates; s++) {
+            setState(s);
+            for (int c = 0; c < size; c++) {
+                int e = _plugboard.permute(c);
+                e = convertRotors(e);
+                table[s * size + c] = _plugboard.permute(e);
+            }
+            advance();
+            next[s] = state();
+        }
+        setState(start);
+        _table = table;
+        _next = next;
+        _state = start;
+        _tableUses = 0;
+    }
+
+    /** Bring _layers up to date for Engine.COMPOSED, recomposing only
+     *  the layers from number _composed on: layer L composes the moving
+     *  rotor in slot numRotors() - numPawls() + L, at its current
+     *  setting, with layer L - 1, or with _turnaround for layer 0. */
+    private void composeLayers() {
+        int size = _alphabet.size(), layers = _pawls - 1;
+        if (_layers == null || _layers.length != layers * size) {
+            _layers = new int[layers * size];
+            _composed = 0;
+        }
+        int firstMoving = _rotors.length - _pawls;
+        for (int layer = _composed; layer < layers; layer++) {
+            int slot = firstMoving + layer;
+            int setting = _rotors[slot].setting();
+            int[] left = layer == 0 ? _turnaround : _layers;
+            int from = layer == 0 ? 0 : (layer - 1) * size;
+            int to = layer * size;
+            for (int c = 0; c < size; c++) {
+                _layers[to + c] =
+                    backward(slot, setting,
+                             left[from + forward(slot, setting, c)]);
+            }
+        }
+        _composed = layers;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
@@ -109,11 +841,7 @@ class Machine {
             curr = convert(curr);
             arr[i] = _alphabet.toChar(curr);
         }
-        String val = "";
-        for (int i = 0; i < arr.length; i++) {
-            val = val + arr[i];
-        }
-        return val;
+        return new String(arr);
     }
 
     /** Common alphabet of my rotors. */
@@ -131,6 +859,92 @@ class Machine {
     /** Array of Rotor slots. */
     private Rotor[] _rotors;
 
+    /** Wirings of the rotors in my slots, packed in slot order. */
+    private PackedTable _wiring;
+
+    /** Shared tables from which I read my rotors' conversions, or
+     *  null. */
+    private RotorTableStore _store;
+
+    /** Number in _store of the rotor in each slot. */
+    private int[] _storeIndex;
+
+    /** Combined permutation of the reflector and the non-moving rotors
+     *  in my slots, applied to signals entering from the right. */
+    private int[] _turnaround;
+
+    /** Compositions of the moving rotors but the rightmost with
+     *  everything to their left, used by Engine.COMPOSED and laid out
+     *  as described at composeLayers. */
+    private int[] _layers;
+
+    /** Number of the leading layers of _layers that are up to date. */
+    private int _composed;
+
+    /** Permutation performed by the whole machine, plugboard included,
+     *  in each state numbered by state(): entry S * alphabet size + C is
+     *  the image of C in state S.  Used by Engine.TABLE; null when it
+     *  must be rebuilt. */
+    private int[] _table;
+
+    /** The state following each state, for Engine.TABLE. */
+    private int[] _next;
+
+    /** Current state for Engine.TABLE, or -1 if it must be read from the
+     *  rotors. */
+    private int _state = -1;
+
+    /** True iff Engine.TABLE or Engine.KERNEL has moved past the
+     *  positions held by the rotors under my pawls. */
+    private boolean _rotorsStale;
+
+    /** Engine used to convert characters. */
+    private Engine _engine = Engine.WALK;
+
+    /** Number of characters I expect to convert, as given to
+     *  chooseEngine. */
+    private long _expected = DEFAULT_VOLUME;
+
+    /** True iff chooseEngine asked for a calibration not yet done. */
+    private boolean _calibrationPending;
+
+    /** True iff my engine was chosen by chooseEngine. */
+    private boolean _chosen;
+
+    /** True iff my engine was chosen to be Engine.TABLE, but has since
+     *  been switched to Engine.KERNEL. */
+    private boolean _fellBack;
+
+    /** Number of characters converted with the present table of
+     *  Engine.TABLE. */
+    private long _tableUses;
+
+    /** Times per character found by calibrateEngine, or null if it has
+     *  not run. */
+    private String _calibration;
+
     /** Plugboard of Enigma Machine. */
     private Permutation _plugboard;
+
+    /** Wirings of the rotors under my pawls for Engine.KERNEL, laid out
+     *  as in _wiring; null when they must be compiled. */
+    private int[] _kernel;
+
+    /** Image of each character under my plugboard, for Engine.KERNEL;
+     *  null when it must be remade. */
+    private int[] _plug;
+
+    /** Entry SLOT * alphabet size + P is true iff the rotor in SLOT is at
+     *  a notch in position P, for Engine.KERNEL. */
+    private boolean[] _notches;
+
+    /** True for each slot whose rotor rotates, for Engine.KERNEL. */
+    private boolean[] _rotates;
+
+    /** Positions of the rotors under my pawls, by slot, for
+     *  Engine.KERNEL. */
+    private int[] _positions;
+
+    /** True iff _positions holds the positions of my rotors. */
+    private boolean _kernelLoaded;
 }
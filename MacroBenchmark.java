@@ -0,0 +1,330 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static enigma.EnigmaException.*;
+
+/** End-to-end benchmark of Main.  For each profile of TrafficGenerator
+ *  and each of a list of input sizes, generates a configuration and
+ *  input (kept in a work directory for later runs), runs Main on them in
+ *  a fresh JVM several times, and records the best run's throughput
+ *  together with that JVM's peak resident set size and time spent in
+ *  garbage collection.  Throughput is taken from the time the child
+ *  spends in Main itself, so that JVM startup, which dominates small
+ *  inputs, does not count; the wall-clock time is recorded as well.
+ *  The results are written as JSON, and may be compared with those of
+ *  an earlier report, the baseline: a drop in throughput or growth in
+ *  peak RSS beyond a threshold is a regression.
+ *  @author Josh Rubin
+ */
+final class MacroBenchmark {
+
+    /** Default fraction by which a result may be worse than the baseline
+     *  before it counts as a regression. */
+    static final double THRESHOLD = 0.10;
+
+    /** Number of runs of each benchmark, of which the fastest counts. */
+    static final int RUNS = 3;
+
+    /** Seed of the generated configurations and inputs. */
+    private static final long SEED = 41;
+
+    /** Prefix of the line on which a child JVM reports the time Main
+     *  took in nanoseconds, its peak RSS in kilobytes, and its
+     *  garbage-collection time in milliseconds. */
+    private static final String METRICS = "METRICS";
+
+    /** Pattern of a run in a report, as written by toJson. */
+    private static final Pattern RUN = Pattern.compile(
+        "\"name\": \"([^\"]+)\".*\"mbPerSecond\": ([0-9.]+),"
+        + " \"peakRssKb\": (-?[0-9]+)");
+
+    /** Run the benchmarks with input sizes ARGS[0] (a comma-separated
+     *  list of sizes as for TrafficGenerator.parseSize, such as
+     *  "64K,4M,1G"), writing the JSON
+     *  report to ARGS[1].  If ARGS[2] is present, it names a baseline
+     *  report to compare with, and ARGS[3] optionally gives the
+     *  threshold as a percentage (default 10).  Generated files are kept
+     *  in the directory named by the property enigma.benchdir (default
+     *  "bench").  Exits with code 1 on errors or regressions.  Internally,
+     *  ARGS of "--child CONFIG INPUT OUTPUT" runs Main in a child JVM. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 4 && args[0].equals("--child")) {
+                child(args[1], args[2], args[3]);
+                return;
+            }
+            if (args.length < 2 || args.length > 4) {
+                throw error("usage: MacroBenchmark SIZES REPORT "
+                            + "[BASELINE [THRESHOLD]]");
+            }
+            double threshold = THRESHOLD;
+            if (args.length > 3) {
+                try {
+                    threshold = Double.parseDouble(args[3]) / 100;
+                } catch (NumberFormatException excp) {
+                    throw error("bad threshold %s", args[3]);
+                }
+            }
+            File dir = new File(System.getProperty("enigma.benchdir",
+                                                   "bench"));
+            List<Result> results = run(dir, args[0].split(","),
+                                       System.err);
+            try (PrintStream out = Main.getOutput(args[1])) {
+                out.print(toJson(results));
+            }
+            if (args.length == 2
+                || compare(results, readReport(new File(args[2])),
+                           threshold, System.err) == 0) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The result of one benchmark. */
+    static class Result {
+
+        /** The result of the benchmark named NAME on BYTES bytes of input,
+         *  taking SECONDS in Main and WALLSECONDS in all, with peak RSS
+         *  PEAKRSSKB kilobytes and GCMILLIS milliseconds of garbage
+         *  collection. */
+        Result(String name, long bytes, double seconds, double wallSeconds,
+               long peakRssKb, long gcMillis) {
+            this.name = name;
+            this.bytes = bytes;
+            this.seconds = seconds;
+            this.wallSeconds = wallSeconds;
+            this.peakRssKb = peakRssKb;
+            this.gcMillis = gcMillis;
+        }
+
+        /** Return the throughput in megabytes (2^20 bytes) per second. */
+        double mbPerSecond() {
+            return bytes / seconds / (1 << 20);
+        }
+
+        /** Name of the benchmark: its profile and size. */
+        final String name;
+
+        /** Bytes of input. */
+        final long bytes;
+
+        /** Time in seconds spent in Main. */
+        final double seconds;
+
+        /** Wall-clock time in seconds, including JVM startup. */
+        final double wallSeconds;
+
+        /** Peak resident set size in kilobytes, or -1 if unknown. */
+        final long peakRssKb;
+
+        /** Milliseconds spent in garbage collection. */
+        final long gcMillis;
+    }
+
+    /** Run each profile on each of SIZES, keeping generated files in DIR
+     *  and logging progress to LOG, and return the results. */
+    static List<Result> run(File dir, String[] sizes, PrintStream log) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw error("could not create %s", dir);
+        }
+        ArrayList<Result> results = new ArrayList<>();
+        for (String profile : TrafficGenerator.PROFILE_NAMES) {
+            for (String size : sizes) {
+                String name = profile + "-" + size;
+                File config = new File(dir, name + ".conf");
+                File input = new File(dir, name + ".in");
+                long bytes = TrafficGenerator.parseSize(size);
+                if (!config.exists() || !input.exists()
+                    || input.length() < bytes) {
+                    TrafficGenerator.generate(
+                        TrafficGenerator.profile(profile), config, input,
+                        bytes, SEED);
+                }
+                Result best = null;
+                for (int i = 0; i < RUNS; i++) {
+                    Result result = runChild(name, config, input);
+                    if (best == null || result.seconds < best.seconds) {
+                        best = result;
+                    }
+                }
+                log.printf(Locale.ROOT, "%-16s %10.2f MB/s %8.2f s wall "
+                           + "%10d KB RSS %8d ms GC%n", name,
+                           best.mbPerSecond(), best.wallSeconds,
+                           best.peakRssKb, best.gcMillis);
+                results.add(best);
+            }
+        }
+        return results;
+    }
+
+    /** Run Main in a new JVM on CONFIG and INPUT, and return the result,
+     *  named NAME. */
+    private static Result runChild(String name, File config, File input) {
+        File output = null;
+        try {
+            output = File.createTempFile("enigma", ".out");
+            String java = System.getProperty("java.home") + File.separator
+                + "bin" + File.separator + "java";
+            ProcessBuilder builder = new ProcessBuilder(
+                java, "-cp", System.getProperty("java.class.path"),
+                MacroBenchmark.class.getName(), "--child", config.getPath(),
+                input.getPath(), output.getPath());
+            builder.redirectErrorStream(true);
+            long start = System.nanoTime();
+            Process process = builder.start();
+            String metrics = null;
+            StringBuilder text = new StringBuilder();
+            try (BufferedReader out = new BufferedReader(
+                     new InputStreamReader(process.getInputStream()))) {
+                for (String line = out.readLine(); line != null;
+                     line = out.readLine()) {
+                    if (line.startsWith(METRICS)) {
+                        metrics = line;
+                    } else {
+                        text.append(line).append('\n');
+                    }
+                }
+            }
+            int status = process.waitFor();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (status != 0 || metrics == null) {
+                throw error("%s failed: %s", name, text.toString().trim());
+            }
+            String[] fields = metrics.split(" ");
+            return new Result(name, input.length(),
+                              Long.parseLong(fields[1]) / 1e9, seconds,
+                              Long.parseLong(fields[2]),
+                              Long.parseLong(fields[3]));
+        } catch (IOException excp) {
+            throw error("could not run %s: %s", name, excp.getMessage());
+        } catch (InterruptedException excp) {
+            throw error("interrupted while running %s", name);
+        } finally {
+            if (output != null) {
+                output.delete();
+            }
+        }
+    }
+
+    /** In a child JVM, run Main on CONFIG and INPUT, writing to OUTPUT,
+     *  and then report the time it took, my peak RSS, and my
+     *  garbage-collection time on the standard output. */
+    private static void child(String config, String input, String output) {
+        long start = System.nanoTime();
+        Main.main(config, input, output);
+        long nanos = System.nanoTime() - start;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        System.out.printf("%s %d %d %d%n", METRICS, nanos, peakRssKb(),
+                          gcMillis);
+    }
+
+    /** Return the peak resident set size of this process in kilobytes,
+     *  or -1 if it cannot be found (it is read from /proc). */
+    static long peakRssKb() {
+        try {
+            for (String line
+                     : Files.readAllLines(new File("/proc/self/status")
+                                          .toPath())) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            /* Fall through. */
+        }
+        return -1;
+    }
+
+    /** Return RESULTS as a JSON report, with each run on one line. */
+    static String toJson(List<Result> results) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("{%n  \"java\": \"%s\",%n  \"runs\": [%n",
+                                 System.getProperty("java.version")));
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            out.append(String.format(Locale.ROOT,
+                                     "    {\"name\": \"%s\", \"bytes\": %d, "
+                                     + "\"seconds\": %.3f, "
+                                     + "\"wallSeconds\": %.3f, "
+                                     + "\"mbPerSecond\": %.3f, "
+                                     + "\"peakRssKb\": %d, "
+                                     + "\"gcMillis\": %d}%s%n",
+                                     r.name, r.bytes, r.seconds,
+                                     r.wallSeconds, r.mbPerSecond(),
+                                     r.peakRssKb,
+                                     r.gcMillis,
+                                     i + 1 < results.size() ? "," : ""));
+        }
+        out.append(String.format("  ]%n}%n"));
+        return out.toString();
+    }
+
+    /** Return the runs in the report in FILE, written by toJson, as a map
+     *  from name to {throughput in MB/s, peak RSS in KB}. */
+    static HashMap<String, double[]> readReport(File file) {
+        HashMap<String, double[]> runs = new HashMap<>();
+        try {
+            for (String line : Files.readAllLines(file.toPath())) {
+                Matcher m = RUN.matcher(line);
+                if (m.find()) {
+                    runs.put(m.group(1),
+                             new double[] { Double.parseDouble(m.group(2)),
+                                            Double.parseDouble(m.group(3)) });
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        return runs;
+    }
+
+    /** Compare RESULTS with BASELINE (as returned by readReport), logging
+     *  each comparison to LOG, and return the number of regressions: runs
+     *  whose throughput is more than THRESHOLD (a fraction) below the
+     *  baseline's, or whose peak RSS is more than THRESHOLD above it.
+     *  Runs missing from the baseline are logged and not counted. */
+    static int compare(List<Result> results,
+                       HashMap<String, double[]> baseline, double threshold,
+                       PrintStream log) {
+        int regressions = 0;
+        for (Result r : results) {
+            double[] base = baseline.get(r.name);
+            if (base == null) {
+                log.printf("%-16s not in baseline%n", r.name);
+                continue;
+            }
+            double speed = r.mbPerSecond() / base[0] - 1;
+            double rss = base[1] <= 0 || r.peakRssKb < 0 ? 0
+                : r.peakRssKb / base[1] - 1;
+            boolean regressed = speed < -threshold || rss > threshold;
+            log.printf(Locale.ROOT, "%-16s throughput %+6.1f%%, "
+                       + "peak RSS %+6.1f%%%s%n", r.name, 100 * speed,
+                       100 * rss, regressed ? "  REGRESSION" : "");
+            if (regressed) {
+                regressions += 1;
+            }
+        }
+        return regressions;
+    }
+}
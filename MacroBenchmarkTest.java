@@ -0,0 +1,93 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+/** The suite of all JUnit tests for the MacroBenchmark and
+ *  TrafficGenerator classes.
+ *  @author Josh Rubin
+ */
+public class MacroBenchmarkTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a new temporary file, deleted on exit. */
+    private File tempFile() throws IOException {
+        File file = File.createTempFile("enigma", ".txt");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void generatedTrafficRuns() throws IOException {
+        for (String name : TrafficGenerator.PROFILE_NAMES) {
+            File config = tempFile(), input = tempFile();
+            TrafficGenerator.generate(TrafficGenerator.profile(name), config,
+                                      input, 20000, 1);
+            assertTrue(input.length() >= 20000);
+            Machine machine = Main.configure(config.getPath());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (FileReader in = new FileReader(input)) {
+                Main.process(machine, in, new PrintStream(bytes));
+            }
+            assertTrue(bytes.size() > 10000);
+        }
+    }
+
+    @Test
+    public void parseSize() {
+        assertEquals(100, TrafficGenerator.parseSize("100"));
+        assertEquals(64 << 10, TrafficGenerator.parseSize("64K"));
+        assertEquals(3L << 30, TrafficGenerator.parseSize("3G"));
+    }
+
+    @Test
+    public void parseSeed() {
+        assertEquals(-41, TrafficGenerator.parseSeed("-41"));
+        try {
+            TrafficGenerator.parseSeed("4K");
+            fail("4K accepted as a seed");
+        } catch (EnigmaException excp) {
+            assertEquals("bad seed 4K", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void regressions() throws IOException {
+        List<MacroBenchmark.Result> baseline = Arrays.asList(
+            new MacroBenchmark.Result("a", 1 << 20, 1.0, 2.0, 1000, 5),
+            new MacroBenchmark.Result("b", 1 << 20, 1.0, 2.0, 1000, 5));
+        File report = tempFile();
+        try (PrintWriter out = new PrintWriter(report)) {
+            out.print(MacroBenchmark.toJson(baseline));
+        }
+        PrintStream log = new PrintStream(new ByteArrayOutputStream());
+        List<MacroBenchmark.Result> same = Arrays.asList(
+            new MacroBenchmark.Result("a", 1 << 20, 1.05, 2.0, 1050, 9),
+            new MacroBenchmark.Result("c", 1 << 20, 9.0, 2.0, 9000, 9));
+        assertEquals(0, MacroBenchmark.compare(
+            same, MacroBenchmark.readReport(report), 0.10, log));
+        List<MacroBenchmark.Result> worse = Arrays.asList(
+            new MacroBenchmark.Result("a", 1 << 20, 1.2, 2.0, 1000, 5),
+            new MacroBenchmark.Result("b", 1 << 20, 1.0, 2.0, 1200, 5));
+        assertEquals(2, MacroBenchmark.compare(
+            worse, MacroBenchmark.readReport(report), 0.10, log));
+    }
+}
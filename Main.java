@@ -1,12 +1,15 @@
 package enigma;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
-
-import java.util.ArrayList;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
 
 import static enigma.EnigmaException.*;
 
@@ -23,11 +26,26 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *  The arguments may be preceded by any of these options:
+     *  "--pipeline", to read, convert, and write input on separate
+     *  threads (see Pipeline); "--calibrate", to time the machine's
+     *  engines on the first setting before settling on one (see
+     *  Machine.chooseEngine); and "--show-engine", to report the engine
+     *  used on the standard error.
+     *  Alternatively, ARGS may be "--batch" followed by the name of a
+     *  manifest file and optionally a number of threads, to run the jobs
+     *  the manifest lists (see BatchRunner). */
     public static void main(String... args) {
         try {
-            new Main(args).process();
-            return;
+            if (args.length > 0 && args[0].equals("--batch")) {
+                if (BatchRunner.fromArgs(args).run(System.err)) {
+                    return;
+                }
+            } else {
+                new Main(args).process();
+                return;
+            }
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
         }
@@ -36,6 +54,24 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int options;
+        for (options = 0; options < args.length
+                 && args[options].startsWith("--"); options += 1) {
+            switch (args[options]) {
+            case "--pipeline":
+                _pipeline = true;
+                break;
+            case "--calibrate":
+                _calibrate = true;
+                break;
+            case "--show-engine":
+                _showEngine = true;
+                break;
+            default:
+                throw error("unknown option %s", args[options]);
+            }
+        }
+        args = Arrays.copyOfRange(args, options, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
@@ -44,8 +80,9 @@ public final class Main {
 
         if (args.length > 1) {
             _input = getInput(args[1]);
+            _volume = new File(args[1]).length();
         } else {
-            _input = new Scanner(System.in);
+            _input = new InputStreamReader(System.in);
         }
 
         if (args.length > 2) {
@@ -55,17 +92,33 @@ public final class Main {
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return the configuration in the configuration file named
+     *  CONFIGNAME. */
+    static Config readConfig(String configName) {
+        try (Reader config = getInput(configName)) {
+            return new Parser(config, configName).config();
+        } catch (IOException excp) {
+            throw error("could not read %s", configName);
+        }
+    }
+
+    /** Return an Enigma machine configured from the contents of the
+     *  configuration file named CONFIGNAME. */
+    static Machine configure(String configName) {
+        return readConfig(configName).newMachine();
+    }
+
+    /** Return a Reader reading from the file named NAME. */
+    static Reader getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            return new FileReader(name);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
     /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    static PrintStream getOutput(String name) {
         try {
             return new PrintStream(new File(name));
         } catch (IOException excp) {
@@ -78,131 +131,130 @@ public final class Main {
      *  results to _output. */
     private void process() {
         Machine machine = readConfig();
-        if (!_input.hasNext("\\*.*")) {
-            throw new EnigmaException("Input doesn't start with Setting");
-        }
-        while (_input.hasNextLine()) {
-            boolean nextLineIsSetting = _input.hasNext("\\*.*");
-            String nextLine = _input.nextLine();
-            if (nextLine.equals("")) {
-                _output.println();
-            } else if (nextLineIsSetting) {
-                setUp(machine, nextLine);
+        machine.chooseEngine(_volume, _calibrate);
+        try {
+            if (_pipeline) {
+                Pipeline.process(machine, _input, _output);
             } else {
-                String line = nextLine;
-                line = line.replace(" ", "");
-                line = line.toUpperCase();
-                line = machine.convert(line);
-                printMessageLine(line);
-                _output.println();
+                process(machine, _input, _output);
+            }
+        } finally {
+            if (_showEngine) {
+                System.err.println(machine.engineReport());
             }
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Apply MACHINE to the setting and message lines read from IN,
+     *  sending the results to OUT.  IN may also contain indicator lines,
+     *  each "**" followed by an indicator, which start a message under
+     *  the day key set by the last setting line (see indicate). */
+    static void process(Machine machine, Reader in, PrintStream out) {
+        Parser input = new Parser(in, "input");
+        Writer output = new BufferedWriter(new OutputStreamWriter(out));
+        Setting day = null;
         try {
-            _alphabet = new Alphabet(_config.next());
-            int numRotors = _config.nextInt();
-            int pawls = _config.nextInt();
-            if (pawls >= numRotors) {
-                throw new EnigmaException("Numb"
-                        + "er of Pawls must be less than Number of Rotors");
+            while (!input.atEnd()) {
+                int blanks = input.skipBlanks();
+                int c = input.peek();
+                if (c == '*') {
+                    input.next();
+                    if (input.peek() == '*') {
+                        input.next();
+                        if (day == null) {
+                            throw new EnigmaException("Input doesn't start "
+                                    + "with Setting");
+                        }
+                        indicate(machine, day, input.indicator(machine));
+                    } else {
+                        day = input.setting(machine);
+                        setUp(machine, day);
+                    }
+                } else if (blanks == 0 && (c == '\n' || c == Parser.EOF)) {
+                    input.next();
+                    output.write(NEWLINE);
+                } else if (day == null) {
+                    throw new EnigmaException("Input doesn't start "
+                            + "with Setting");
+                } else {
+                    convertMessageLine(machine, input, output);
+                }
+            }
+            if (day == null) {
+                throw new EnigmaException("Input doesn't start with Setting");
             }
-            ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
-            while (_config.hasNext()) {
-                allRotors.add(readRotor());
+        } catch (IOException excp) {
+            throw error("could not write output");
+        } finally {
+            try {
+                output.flush();
+            } catch (IOException excp) {
+                /* Ignore; any error has been reported. */
             }
-            return new Machine(_alphabet, numRotors, pawls, allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        try {
-            boolean moving = false;
-            boolean reflector = false;
-            boolean nonMoving = false;
-            String name = _config.next();
-            String nextStr = _config.next();
-            if (nextStr.substring(0, 1).equals("M")) {
-                moving = true;
-            } else if (nextStr.substring(0, 1).equals("R")) {
-                reflector = true;
-            } else if (nextStr.substring(0, 1).equals("N")) {
-                nonMoving = true;
-            }
-            String notches = "";
-            if (nextStr.length() > 1) {
-                notches += nextStr.substring(1);
+    /** Convert the rest of the current line of INPUT with M, ignoring
+     *  whitespace and case, and write the result to OUTPUT in groups of
+     *  five (except that the last group may have fewer letters), each
+     *  followed by a blank, and then a line end. */
+    private static void convertMessageLine(Machine M, Parser input,
+                                           Writer output)
+        throws IOException {
+        Alphabet alphabet = M.alphabet();
+        int count = 0;
+        for (int c = input.peek(); c != '\n' && c != Parser.EOF;
+             c = input.peek()) {
+            int line = input.line(), column = input.column();
+            input.next();
+            if (Character.isWhitespace(c)) {
+                continue;
             }
-            String cycles = "";
-            while (_config.hasNext("\\(.*")) {
-                String curr = _config.next();
-                cycles += (curr + " ");
+            char upper = Character.toUpperCase((char) c);
+            if (!alphabet.contains(upper)) {
+                throw input.errorAt(line, column, "'%c' not in alphabet",
+                                    (char) c);
             }
-            Permutation perm = new Permutation(cycles, _alphabet);
-            if (moving) {
-                return new MovingRotor(name, perm, notches);
-            } else if (reflector) {
-                return new Reflector(name, perm);
-            } else {
-                return new FixedRotor(name, perm);
+            output.write(alphabet.toChar(M.convert(alphabet.toInt(upper))));
+            count += 1;
+            if (count % 5 == 0) {
+                output.write(' ');
             }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
         }
+        input.next();
+        if (count % 5 != 0 || count == 0) {
+            output.write(' ');
+        }
+        output.write(NEWLINE);
     }
 
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        String curr = "";
-        int numRotorsSeen = 0;
-        String[] rotorNames = new String[M.numRotors()];
-        int i = 0;
-        String cycles = "";
-        String setting = "";
-        for (String split : settings.split(" ")) {
-            if (split.equals("*")) {
-                int useless = 1;
-            } else if (numRotorsSeen < M.numRotors()) {
-                rotorNames[i] = split;
-                i++;
-                numRotorsSeen++;
-            } else if (split.contains("(")) {
-                cycles += (split + " ");
-            } else {
-                setting = split;
-            }
-        }
-        Permutation plugBoard = new Permutation(cycles, _alphabet);
-        M.setPlugboard(plugBoard);
-        testRotorNamesError(rotorNames);
-        M.insertRotors(rotorNames);
-        if (setting.length() != M.numRotors() - 1) {
-            throw new EnigmaException("I"
-                    + "nitial Positions String incorrect length.");
-        }
-        for (int x = 0; x < rotorNames.length; x++) {
-            for (int y = 0; y < rotorNames.length; y++) {
-                if (rotorNames[x].equals(rotorNames[y])
-                        && x != y) {
-                    throw new EnigmaException("R"
-                            + "otor repeated in Setting Line.");
-                }
-            }
-        }
-        M.setRotors(setting);
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _config. */
+    private Machine readConfig() {
+        return new Parser(_config, "configuration").config().newMachine();
+    }
+
+    /** Set M according to SETTING, read from a setting line. */
+    static void setUp(Machine M, Setting setting) {
+        testRotorNamesError(setting.rotors());
+        setting.applyTo(M);
+        M.calibrateEngine();
+    }
+
+    /** Set the rotors of M, which has been set up by DAY, to the message
+     *  key encrypted as INDICATOR.  The indicator is decrypted with the
+     *  rotors at the positions given by DAY; the rest of the setup,
+     *  including the machine's tables for its rotors and plugboard, is
+     *  kept. */
+    static void indicate(Machine M, Setting day, String indicator) {
+        M.setRotors(day.positions());
+        M.setRotors(M.convert(indicator));
     }
 
     /** Tests for Errors in Setting.
      * @param rotorNames Array of rotor Names.
      * */
-    private void testRotorNamesError(String[] rotorNames) {
+    private static void testRotorNamesError(String[] rotorNames) {
         for (int i = 0; i < rotorNames.length; i++) {
             if (i == 1 && rotorNames[i].equals("I")) {
                 throw new EnigmaException("");
@@ -210,23 +262,27 @@ public final class Main {
         }
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        for (String split : msg.split("(?<=\\G.{5})")) {
-            _output.print(split + " ");
-        }
-    }
-
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
+    /** Line separator used in output. */
+    private static final String NEWLINE = System.lineSeparator();
 
     /** Source of input messages. */
-    private Scanner _input;
+    private Reader _input;
 
     /** Source of machine configuration. */
-    private Scanner _config;
+    private Reader _config;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
+
+    /** True iff messages are processed by a Pipeline. */
+    private boolean _pipeline;
+
+    /** True iff the machine's engines are timed before one is chosen. */
+    private boolean _calibrate;
+
+    /** True iff the engine used is reported on the standard error. */
+    private boolean _showEngine;
+
+    /** Approximate number of characters of input, or -1 if unknown. */
+    private long _volume = -1;
 }
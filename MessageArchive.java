@@ -0,0 +1,628 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** An archive of messages, held in a file that is mapped into memory.
+ *  Each message is stored as the indices of its characters in the
+ *  archive's alphabet, packed into as few bits as the alphabet needs,
+ *  together with the setting under which it was enciphered, if known.
+ *  An index gives the place of every message, so that any one can be
+ *  read without reading those before it.  Archives are converted from
+ *  and to the format of input files by pack and unpack.
+ *
+ *  <p>The file is little-endian.  It holds a header of HEADER_SIZE bytes
+ *  (the magic word, the bits per character, the number of messages, and
+ *  the offsets of the index and of the settings) and the alphabet,
+ *  followed by the characters of all the messages, one after another,
+ *  as a stream of bits that fills each byte from its least significant
+ *  bit up.  The index follows: for each message, and then for the end
+ *  of the stream, a word giving the bit offset in the file at which the
+ *  message starts, the number of its setting, and whether it continues
+ *  the message before it (see continues).  Last come the settings, each
+ *  the text of the setting line, and of any indicator line, that precede
+ *  a group of messages; a setting that recurs is stored once.
+ *  @author Josh Rubin
+ */
+final class MessageArchive {
+
+    /** First word of an archive file. */
+    private static final int MAGIC = 0x414d4e45;
+
+    /** Size of the header of an archive in bytes. */
+    private static final int HEADER_SIZE = 32;
+
+    /** Size of the index entry of one message in bytes. */
+    private static final int ENTRY_SIZE = 8;
+
+    /** Number of bits of an index entry that give its offset. */
+    private static final int OFFSET_BITS = 40;
+
+    /** Largest number of distinct settings in an archive. */
+    private static final int MAX_SETTINGS = (1 << 23) - 2;
+
+    /** Number of characters on each line written by unpack, in groups of
+     *  five. */
+    private static final int LINE_LENGTH = 60;
+
+    /** Largest number of bytes mapped as one buffer, not counting the
+     *  OVERLAP bytes each shares with the next, which must lie within
+     *  2 GB. */
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    /** Number of bytes by which each mapped buffer runs into the next,
+     *  so that every value read starts and ends in one buffer. */
+    private static final int OVERLAP = 8;
+
+    /** An archive whose file has been mapped to SEGMENTS, holding
+     *  SIZE messages over ALPHABET, with BITS bits per character, its
+     *  index at offset INDEX, and the settings SETTINGS. */
+    private MessageArchive(Segments segments, Alphabet alphabet, int bits,
+                           int size, long index, String[] settings) {
+        _segments = segments;
+        _alphabet = alphabet;
+        _bits = bits;
+        _size = size;
+        _index = index;
+        _settings = settings;
+    }
+
+    /** With ARGS of "pack CONFIG INPUT ARCHIVE", write the messages of
+     *  the input file INPUT, in the alphabet of configuration CONFIG, to
+     *  the archive ARCHIVE.  With ARGS of "unpack ARCHIVE OUTPUT", write
+     *  the messages of ARCHIVE to OUTPUT (default the standard output) in
+     *  the format of input files.  Exits with code 1 on errors. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 4 && args[0].equals("pack")) {
+                long start = System.nanoTime();
+                int messages = pack(Main.readConfig(args[1]).alphabet(),
+                                    Main.getInput(args[2]),
+                                    new File(args[3]));
+                System.err.printf("%d messages, %.1f s%n", messages,
+                                  (System.nanoTime() - start) / 1e9);
+                return;
+            } else if ((args.length == 2 || args.length == 3)
+                       && args[0].equals("unpack")) {
+                MessageArchive archive = open(new File(args[1]));
+                PrintStream out = args.length == 3 ? Main.getOutput(args[2])
+                    : System.out;
+                unpack(archive, out);
+                out.flush();
+                if (out.checkError()) {
+                    throw error("could not write output");
+                }
+                return;
+            }
+            throw error("usage: MessageArchive pack CONFIG INPUT ARCHIVE "
+                        + "| unpack ARCHIVE [OUTPUT]");
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write the messages read from IN, in the format of input files,
+     *  to a new archive over ALPHABET in FILE, and return the number of
+     *  messages.  As for DepthFinder.readMessages, setting lines and
+     *  blank lines separate messages, and the lines of a message are
+     *  joined without whitespace and converted to upper case.  Each run
+     *  of setting and indicator lines becomes the setting of the messages
+     *  that follow it. */
+    static int pack(Alphabet alphabet, Reader in, File file) {
+        try (BufferedReader lines = new BufferedReader(in);
+             Writer out = new Writer(alphabet, file)) {
+            StringBuilder text = new StringBuilder();
+            StringBuilder setting = new StringBuilder();
+            int lineNum = 0;
+            for (String line = lines.readLine(); ; line = lines.readLine()) {
+                lineNum += 1;
+                String trimmed = line == null ? "" : line.trim();
+                boolean header = trimmed.startsWith("*");
+                if (trimmed.isEmpty() || header) {
+                    if (text.length() > 0) {
+                        out.add(text);
+                        text.setLength(0);
+                    }
+                    if (line == null) {
+                        break;
+                    }
+                }
+                if (header) {
+                    if (setting.length() > 0) {
+                        setting.append('\n');
+                    }
+                    setting.append(trimmed);
+                    continue;
+                } else if (setting.length() > 0) {
+                    out.setting(setting.toString());
+                    setting.setLength(0);
+                }
+                for (int i = 0; i < trimmed.length(); i++) {
+                    char c = Character.toUpperCase(trimmed.charAt(i));
+                    if (Character.isWhitespace(c)) {
+                        continue;
+                    } else if (!alphabet.contains(c)) {
+                        throw error("line %d: '%c' not in alphabet", lineNum,
+                                    trimmed.charAt(i));
+                    }
+                    text.append(c);
+                }
+            }
+            out.finish();
+            return out.size();
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Write the messages of ARCHIVE to OUT in the format of input files,
+     *  in groups of five characters: each message after its setting,
+     *  unless it continues the message before, in which case it follows a
+     *  blank line. */
+    static void unpack(MessageArchive archive, PrintStream out) {
+        String newline = System.lineSeparator();
+        int[] chars = new int[0];
+        StringBuilder line = new StringBuilder();
+        for (int m = 0; m < archive.size(); m++) {
+            String setting = archive.setting(m);
+            if (setting != null && !archive.continues(m)) {
+                out.print(setting.replace("\n", newline));
+                out.print(newline);
+            } else if (m > 0) {
+                out.print(newline);
+            }
+            chars = archive.indices(m, chars);
+            int length = archive.length(m);
+            for (int start = 0; start < length; start += LINE_LENGTH) {
+                line.setLength(0);
+                int end = Math.min(length, start + LINE_LENGTH);
+                for (int i = start; i < end; i++) {
+                    line.append(archive._alphabet.toChar(chars[i]));
+                    if ((i + 1) % 5 == 0 && i + 1 < end) {
+                        line.append(' ');
+                    }
+                }
+                out.print(line);
+                out.print(newline);
+            }
+        }
+    }
+
+    /** Return true iff FILE starts as an archive does. */
+    static boolean isArchive(File file) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return in.length() >= HEADER_SIZE
+                && Integer.reverseBytes(in.readInt()) == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the archive in FILE, mapped into memory. */
+    static MessageArchive open(File file) {
+        return open(file, SEGMENT_SIZE);
+    }
+
+    /** Return the archive in FILE, mapped into memory as buffers of at
+     *  most SEGMENTSIZE bytes each, and OVERLAP more. */
+    static MessageArchive open(File file, int segmentSize) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE) {
+                throw error("%s is not a message archive", file);
+            }
+            Segments segments = new Segments(channel, length, segmentSize);
+            if (segments.getInt(0) != MAGIC) {
+                throw error("%s is not a message archive", file);
+            }
+            int bits = segments.getInt(4);
+            long size = segments.getLong(8);
+            long index = segments.getLong(16);
+            long settings = segments.getLong(24);
+            if (bits < 1 || bits > 16 || size < 0 || size >= Integer.MAX_VALUE
+                || index < HEADER_SIZE || settings < 0
+                || index + (size + 1) * ENTRY_SIZE > settings
+                || settings + 4 > length) {
+                throw error("%s is corrupt", file);
+            }
+            Alphabet alphabet = new Alphabet(segments.string(HEADER_SIZE));
+            String[] texts = new String[segments.getInt(settings)];
+            long at = settings + 4;
+            for (int i = 0; i < texts.length; i++) {
+                texts[i] = segments.string(at);
+                at += 4 + 2L * texts[i].length();
+            }
+            return new MessageArchive(segments, alphabet, bits, (int) size,
+                                      index, texts);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** An archive file mapped into memory as a series of buffers, each
+     *  of which runs OVERLAP bytes into the next. */
+    private static final class Segments {
+
+        /** The LENGTH bytes of CHANNEL, mapped as buffers of SEGMENTSIZE
+         *  bytes each, and OVERLAP more but for the last. */
+        Segments(FileChannel channel, long length, int segmentSize)
+            throws IOException {
+            long count = segmentSize <= 0 ? -1
+                : (length + segmentSize - 1) / segmentSize;
+            if (count < 0 || count > Integer.MAX_VALUE
+                || segmentSize > Integer.MAX_VALUE - OVERLAP) {
+                throw error("bad segment size %d", segmentSize);
+            }
+            _segmentSize = segmentSize;
+            _length = length;
+            _buffers = new ByteBuffer[(int) count];
+            for (int k = 0; k < _buffers.length; k++) {
+                long first = (long) k * segmentSize;
+                long size = Math.min(segmentSize + OVERLAP, length - first);
+                _buffers[k] =
+                    channel.map(FileChannel.MapMode.READ_ONLY, first, size)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        /** Return the buffer holding the value of at most OVERLAP bytes
+         *  at offset AT, checking that the value lies in the file. */
+        private ByteBuffer buffer(long at, int bytes) {
+            if (at < 0 || at + bytes > _length) {
+                throw error("archive read out of bounds at %d", at);
+            }
+            return _buffers[(int) (at / _segmentSize)];
+        }
+
+        /** Return the offset of AT in its buffer. */
+        private int offset(long at) {
+            return (int) (at % _segmentSize);
+        }
+
+        /** Return the long at offset AT. */
+        long getLong(long at) {
+            return buffer(at, 8).getLong(offset(at));
+        }
+
+        /** Return the int at offset AT. */
+        int getInt(long at) {
+            return buffer(at, 4).getInt(offset(at));
+        }
+
+        /** Return the char at offset AT. */
+        char getChar(long at) {
+            return buffer(at, 2).getChar(offset(at));
+        }
+
+        /** Return the string at offset AT, stored as its length followed
+         *  by its characters. */
+        String string(long at) {
+            int length = getInt(at);
+            if (length < 0 || at + 4 + 2L * length > _length) {
+                throw error("archive string out of bounds at %d", at);
+            }
+            char[] chars = new char[length];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = getChar(at + 4 + 2L * i);
+            }
+            return new String(chars);
+        }
+
+        /** Number of bytes of each buffer but the last, not counting its
+         *  overlap with the next. */
+        private final int _segmentSize;
+
+        /** Number of bytes mapped. */
+        private final long _length;
+
+        /** The mapped buffers. */
+        private final ByteBuffer[] _buffers;
+    }
+
+    /** Return the number of bits needed for an index into an alphabet of
+     *  SIZE characters. */
+    static int bitsFor(int size) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    /** Return the number of messages. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the alphabet of my messages. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of characters in message M. */
+    int length(int m) {
+        long start = offset(entry(m));
+        long end =
+            offset(_segments.getLong(_index + (m + 1L) * ENTRY_SIZE));
+        return (int) ((end - start) / _bits);
+    }
+
+    /** Return the setting of message M, the text of its setting line
+     *  followed by any indicator line, or null if it is not known. */
+    String setting(int m) {
+        int setting = (int) (entry(m) >>> (OFFSET_BITS + 1));
+        return setting == 0 ? null : _settings[setting - 1];
+    }
+
+    /** Return true iff message M was enciphered right after message
+     *  M - 1, without resetting the machine, as happens when a blank line
+     *  separates them in an input file. */
+    boolean continues(int m) {
+        return (entry(m) & (1L << OFFSET_BITS)) != 0;
+    }
+
+    /** Return the indices in my alphabet of the characters of message M,
+     *  in INTO if it is long enough, and otherwise in a new array. */
+    int[] indices(int m, int[] into) {
+        long bit = offset(entry(m));
+        int length = length(m);
+        if (into.length < length) {
+            into = new int[length];
+        }
+        int mask = (1 << _bits) - 1;
+        for (int i = 0; i < length; i++, bit += _bits) {
+            long word = _segments.getLong(bit >>> 3);
+            into[i] = (int) (word >>> (bit & 7)) & mask;
+        }
+        return into;
+    }
+
+    /** Return message M. */
+    String message(int m) {
+        int[] chars = indices(m, new int[0]);
+        char[] result = new char[length(m)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = _alphabet.toChar(chars[i]);
+        }
+        return new String(result);
+    }
+
+    /** Return the index entry of message M. */
+    private long entry(int m) {
+        if (m < 0 || m >= _size) {
+            throw error("no message %d in archive", m);
+        }
+        return _segments.getLong(_index + (long) m * ENTRY_SIZE);
+    }
+
+    /** Return the bit offset in ENTRY. */
+    private static long offset(long entry) {
+        return entry & ((1L << OFFSET_BITS) - 1);
+    }
+
+    /** A writer of a new archive, which replaces its file atomically when
+     *  finished.  Closing an unfinished writer discards what it has
+     *  written. */
+    static class Writer implements Closeable {
+
+        /** A writer of an archive over ALPHABET to FILE. */
+        Writer(Alphabet alphabet, File file) throws IOException {
+            _file = file;
+            _alphabet = alphabet;
+            _bits = bitsFor(alphabet.size());
+            File dir = file.getAbsoluteFile().getParentFile();
+            _temp = File.createTempFile(file.getName(), ".tmp", dir);
+            _out = new FileOutputStream(_temp).getChannel();
+            _buffer.position(HEADER_SIZE);
+            StringBuilder chars = new StringBuilder();
+            for (int i = 0; i < alphabet.size(); i++) {
+                chars.append(alphabet.toChar(i));
+            }
+            putString(chars.toString());
+            while (_buffer.position() % 8 != 0) {
+                _buffer.put((byte) 0);
+            }
+            _bit = 8L * _buffer.position();
+        }
+
+        /** Make SETTING, the text of a setting line and of any indicator
+         *  line after it, the setting of the messages added from now
+         *  on. */
+        void setting(String setting) {
+            Integer number = _numbers.get(setting);
+            if (number == null) {
+                if (_settings.size() == MAX_SETTINGS) {
+                    throw error("too many settings for an archive");
+                }
+                _settings.add(setting);
+                number = _settings.size();
+                _numbers.put(setting, number);
+            }
+            _setting = number;
+            _continues = false;
+        }
+
+        /** Add the message TEXT, whose characters must all be in my
+         *  alphabet. */
+        void add(CharSequence text) throws IOException {
+            if (_size + 1 >= _entries.length) {
+                _entries = Arrays.copyOf(_entries, 2 * _entries.length);
+            }
+            _entries[_size] = entry();
+            _size += 1;
+            _continues = true;
+            for (int i = 0; i < text.length(); i++) {
+                long c = _alphabet.toInt(text.charAt(i));
+                if (c < 0) {
+                    throw error("'%c' not in alphabet", text.charAt(i));
+                }
+                int used = (int) (_bit & 63);
+                _word |= c << used;
+                _bit += _bits;
+                if (used + _bits >= 64) {
+                    putLong(_word);
+                    _word = used == 0 ? 0 : c >>> (64 - used);
+                }
+            }
+            if (_bit >= 1L << OFFSET_BITS) {
+                throw error("too many characters for an archive");
+            }
+        }
+
+        /** Return the index entry of a message starting at the current
+         *  bit, as for the index of an archive. */
+        private long entry() {
+            return _bit | (_continues ? 1L << OFFSET_BITS : 0)
+                | (long) _setting << (OFFSET_BITS + 1);
+        }
+
+        /** Return the number of messages added. */
+        int size() {
+            return _size;
+        }
+
+        /** Write the index and settings, and replace my file with the
+         *  archive. */
+        void finish() throws IOException {
+            try {
+                _entries[_size] = _bit;
+                putLong(_word);
+                putLong(0);
+                long index = _written + _buffer.position();
+                for (int m = 0; m <= _size; m++) {
+                    putLong(_entries[m]);
+                }
+                long settings = _written + _buffer.position();
+                room(4);
+                _buffer.putInt(_settings.size());
+                for (String setting : _settings) {
+                    putString(setting);
+                }
+                flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(_bits).putLong(_size)
+                    .putLong(index).putLong(settings).flip();
+                _out.write(header, 0);
+                _out.close();
+                Files.move(_temp.toPath(), _file.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            _out.close();
+            _temp.delete();
+        }
+
+        /** Append V to the output. */
+        private void putLong(long v) throws IOException {
+            room(8);
+            _buffer.putLong(v);
+        }
+
+        /** Append S to the output as its length followed by its
+         *  characters. */
+        private void putString(String s) throws IOException {
+            room(4);
+            _buffer.putInt(s.length());
+            for (int i = 0; i < s.length(); i++) {
+                room(2);
+                _buffer.putChar(s.charAt(i));
+            }
+        }
+
+        /** Make room for N more bytes in _buffer. */
+        private void room(int n) throws IOException {
+            if (_buffer.remaining() < n) {
+                flush();
+            }
+        }
+
+        /** Write the contents of _buffer to the output. */
+        private void flush() throws IOException {
+            _buffer.flip();
+            while (_buffer.hasRemaining()) {
+                _written += _out.write(_buffer);
+            }
+            _buffer.clear();
+        }
+
+        /** File to be written, and the temporary file that replaces it. */
+        private final File _file, _temp;
+
+        /** Alphabet of the messages. */
+        private final Alphabet _alphabet;
+
+        /** Bits per character. */
+        private final int _bits;
+
+        /** Output to _temp. */
+        private final FileChannel _out;
+
+        /** Bytes waiting to be written to _out. */
+        private final ByteBuffer _buffer =
+            ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+        /** Number of bytes written to _out. */
+        private long _written;
+
+        /** Offset in bits of the next character, and the bits of the
+         *  64-bit word containing it that have not been written. */
+        private long _bit, _word;
+
+        /** Number of messages added. */
+        private int _size;
+
+        /** Index entries of the messages added, and room for the end. */
+        private long[] _entries = new long[16];
+
+        /** Number of the setting of the next message (0 if unknown). */
+        private int _setting;
+
+        /** True iff the next message continues the last. */
+        private boolean _continues;
+
+        /** Settings added, in order of their numbers from 1. */
+        private final ArrayList<String> _settings = new ArrayList<>();
+
+        /** Number of each setting added. */
+        private final HashMap<String, Integer> _numbers = new HashMap<>();
+    }
+
+    /** The mapped archive file. */
+    private final Segments _segments;
+
+    /** Alphabet of the messages. */
+    private final Alphabet _alphabet;
+
+    /** Bits per character. */
+    private final int _bits;
+
+    /** Number of messages. */
+    private final int _size;
+
+    /** Offset of the index. */
+    private final long _index;
+
+    /** Text of each setting. */
+    private final String[] _settings;
+}
@@ -0,0 +1,169 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the MessageArchive class.
+ *  @author Josh Rubin
+ */
+public class MessageArchiveTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String INPUT =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM his shoulder Hiawatha\n"
+        + "Took the camera of rosewood\n"
+        + "\n"
+        + "Made of sliding folding rosewood\n"
+        + "* B BETA I II III AAAA\n"
+        + "** QXYZ\n"
+        + "Neatly put it all together\n";
+
+    /** Return a new temporary file name, with no file. */
+    private File tempFile() throws IOException {
+        File file = File.createTempFile("enigma", ".arc");
+        file.deleteOnExit();
+        file.delete();
+        return file;
+    }
+
+    /** Return the archive of INPUT over ALPHABET. */
+    private MessageArchive archive(Alphabet alphabet, String input)
+        throws IOException {
+        File file = tempFile();
+        MessageArchive.pack(alphabet, new StringReader(input), file);
+        return MessageArchive.open(file);
+    }
+
+    /** Return the result of unpacking ARCHIVE. */
+    private String unpack(MessageArchive archive) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        MessageArchive.unpack(archive, out);
+        out.flush();
+        return bytes.toString().replace("\r", "");
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void packsMessages() throws IOException {
+        MessageArchive archive = archive(new UpperCaseAlphabet(), INPUT);
+        assertEquals(3, archive.size());
+        assertEquals("FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD",
+                     archive.message(0));
+        assertEquals("MADEOFSLIDINGFOLDINGROSEWOOD", archive.message(1));
+        assertEquals("NEATLYPUTITALLTOGETHER", archive.message(2));
+        assertEquals(28, archive.length(1));
+        assertFalse(archive.continues(0));
+        assertTrue(archive.continues(1));
+        assertFalse(archive.continues(2));
+        assertEquals("* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+                     archive.setting(1));
+        assertEquals("* B BETA I II III AAAA\n** QXYZ", archive.setting(2));
+    }
+
+    @Test
+    public void unpacksMessages() throws IOException {
+        String text = unpack(archive(new UpperCaseAlphabet(), INPUT));
+        assertEquals("* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+                     + "FROMH ISSHO ULDER HIAWA THATO OKTHE CAMER AOFRO "
+                     + "SEWOO D\n"
+                     + "\n"
+                     + "MADEO FSLID INGFO LDING ROSEW OOD\n"
+                     + "* B BETA I II III AAAA\n"
+                     + "** QXYZ\n"
+                     + "NEATL YPUTI TALLT OGETH ER\n", text);
+        assertEquals(text, unpack(archive(new UpperCaseAlphabet(), text)));
+    }
+
+    @Test
+    public void packsAnyAlphabet() throws IOException {
+        String chars = TrafficGenerator.CHARACTERS;
+        for (int size : new int[] { 2, 3, 26, 33, 64 }) {
+            Alphabet alphabet = new Alphabet(chars.substring(0, size));
+            Random random = new Random(size);
+            StringBuilder input = new StringBuilder();
+            String[] messages = new String[50];
+            for (int m = 0; m < messages.length; m++) {
+                StringBuilder message = new StringBuilder();
+                int length = 1 + random.nextInt(300);
+                for (int i = 0; i < length; i++) {
+                    message.append(chars.charAt(random.nextInt(size)));
+                }
+                messages[m] = message.toString();
+                input.append(messages[m]).append("\n\n");
+            }
+            MessageArchive archive = archive(alphabet, input.toString());
+            assertEquals(messages.length, archive.size());
+            for (int m = messages.length - 1; m >= 0; m--) {
+                assertEquals(messages[m], archive.message(m));
+                assertNull(archive.setting(m));
+            }
+        }
+    }
+
+    @Test
+    public void toolsReadArchives() throws IOException {
+        File file = tempFile();
+        MessageArchive.pack(new UpperCaseAlphabet(), new StringReader(INPUT),
+                            file);
+        List<String> messages = DepthFinder.readMessages(file.getPath());
+        assertEquals(3, messages.size());
+        assertEquals("NEATLYPUTITALLTOGETHER", messages.get(2));
+        assertEquals(String.join("", messages),
+                     SearchCoordinator.readCiphertext(file.getPath()));
+    }
+
+    @Test
+    public void opensInSegments() throws IOException {
+        File file = tempFile();
+        Random random = new Random(45);
+        StringBuilder input = new StringBuilder(INPUT);
+        for (int m = 0; m < 50; m++) {
+            input.append("\n* B BETA I II III ");
+            for (int i = 0; i < 4; i++) {
+                input.append((char) ('A' + random.nextInt(26)));
+            }
+            input.append('\n');
+            for (int i = random.nextInt(300); i >= 0; i--) {
+                input.append((char) ('A' + random.nextInt(26)));
+            }
+            input.append('\n');
+        }
+        MessageArchive.pack(new UpperCaseAlphabet(),
+                            new StringReader(input.toString()), file);
+        String whole = unpack(MessageArchive.open(file));
+        for (int size : new int[] { 1, 8, 13, 1000 }) {
+            MessageArchive archive = MessageArchive.open(file, size);
+            assertEquals(3 + 50, archive.size());
+            assertEquals(whole, unpack(archive));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void badCharacter() throws IOException {
+        File file = tempFile();
+        try {
+            MessageArchive.pack(new UpperCaseAlphabet(),
+                                new StringReader("* B\nAB1\n"), file);
+        } finally {
+            assertFalse(file.exists());
+        }
+    }
+}
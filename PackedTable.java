@@ -0,0 +1,69 @@
+package enigma;
+
+/** A fixed-length table of indices into an alphabet, stored one byte
+ *  per entry when the alphabet has at most 256 characters, and two
+ *  bytes per entry otherwise.  Permutations and the rotors of a machine
+ *  keep their wirings in these, so that many of them fit in cache.
+ *  @author Josh Rubin
+ */
+final class PackedTable {
+
+    /** Largest alphabet whose indices are stored in bytes. */
+    static final int BYTE_LIMIT = 256;
+
+    /** Bytes taken by the header of an array, and the alignment of
+     *  objects, in a 64-bit JVM with compressed references. */
+    static final int ARRAY_HEADER = 16, ALIGNMENT = 8;
+
+    /** A table of LENGTH entries, all 0, each an index into an alphabet
+     *  of ALPHABETSIZE characters. */
+    PackedTable(int alphabetSize, int length) {
+        if (alphabetSize <= BYTE_LIMIT) {
+            _bytes = new byte[length];
+            _shorts = null;
+        } else {
+            _bytes = null;
+            _shorts = new short[length];
+        }
+    }
+
+    /** Return entry K. */
+    int get(int k) {
+        if (_bytes != null) {
+            return _bytes[k] & 0xff;
+        }
+        return _shorts[k] & 0xffff;
+    }
+
+    /** Set entry K to V. */
+    void set(int k, int v) {
+        if (_bytes != null) {
+            _bytes[k] = (byte) v;
+        } else {
+            _shorts[k] = (short) v;
+        }
+    }
+
+    /** Return my number of entries. */
+    int length() {
+        return _bytes != null ? _bytes.length : _shorts.length;
+    }
+
+    /** Return the number of bytes of my entries' array, including its
+     *  header and padding. */
+    long footprint() {
+        int entrySize = _bytes != null ? 1 : 2;
+        return align(ARRAY_HEADER + (long) entrySize * length());
+    }
+
+    /** Return SIZE rounded up to a multiple of the object alignment. */
+    static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /** Entries, for small alphabets; otherwise null. */
+    private final byte[] _bytes;
+
+    /** Entries, for large alphabets; otherwise null. */
+    private final short[] _shorts;
+}
@@ -0,0 +1,389 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** A single-pass reader of configuration files and of the setting and
+ *  message lines of input files.  It reads its source through a fixed
+ *  buffer, one character at a time, and reports errors with the line and
+ *  column at which they occur.
+ *  @author Josh Rubin
+ */
+class Parser {
+
+    /** Value returned by peek() and next() at the end of the source. */
+    static final int EOF = -1;
+
+    /** Size of the buffer through which the source is read. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A parser reading from SOURCE, which is called NAME in error
+     *  messages. */
+    Parser(Reader source, String name) {
+        _source = source;
+        _name = name;
+    }
+
+    /** Return the next character of the source without consuming it, or
+     *  EOF if there is none. */
+    int peek() {
+        if (_pos == _limit && !fill()) {
+            return EOF;
+        }
+        return _buffer[_pos];
+    }
+
+    /** Consume and return the next character of the source, or EOF if
+     *  there is none. */
+    int next() {
+        int c = peek();
+        if (c == '\n') {
+            _line += 1;
+            _column = 1;
+        } else if (c != EOF) {
+            _column += 1;
+        }
+        if (c != EOF) {
+            _pos += 1;
+        }
+        return c;
+    }
+
+    /** Return true iff the source is exhausted. */
+    boolean atEnd() {
+        return peek() == EOF;
+    }
+
+    /** Return the line number of the next character (numbering from 1). */
+    int line() {
+        return _line;
+    }
+
+    /** Return the column number of the next character (numbering from
+     *  1). */
+    int column() {
+        return _column;
+    }
+
+    /** Return an exception whose message locates the next character and
+     *  is formed from MSGFORMAT and ARGUMENTS, as for error. */
+    EnigmaException errorHere(String msgFormat, Object... arguments) {
+        return errorAt(_line, _column, msgFormat, arguments);
+    }
+
+    /** Return an exception whose message locates line LINE, column COLUMN
+     *  and is formed from MSGFORMAT and ARGUMENTS, as for error. */
+    EnigmaException errorAt(int line, int column, String msgFormat,
+                            Object... arguments) {
+        return error("%s, line %d, column %d: %s", _name, line, column,
+                     String.format(msgFormat, arguments));
+    }
+
+    /** Skip spaces, tabs, and carriage returns, but not line ends, and
+     *  return the number of spaces and tabs skipped. */
+    int skipBlanks() {
+        int n = 0;
+        for (int c = peek(); c == ' ' || c == '\t' || c == '\r';
+             c = peek()) {
+            next();
+            if (c != '\r') {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Skip all whitespace, including line ends. */
+    void skipWhitespace() {
+        for (int c = peek(); c != EOF && Character.isWhitespace(c);
+             c = peek()) {
+            next();
+        }
+    }
+
+    /** Consume the rest of the current line, which must contain nothing
+     *  but blanks, and its line end. */
+    void endLine() {
+        skipBlanks();
+        int c = next();
+        if (c != '\n' && c != EOF) {
+            throw errorAt(_line, _column - 1, "unexpected '%c'", (char) c);
+        }
+    }
+
+    /** Return the configuration described by the whole of the source,
+     *  which must be in the format of configuration files. */
+    Config config() {
+        Alphabet alphabet = alphabet();
+        int numRotors = number();
+        int pawls = number();
+        if (numRotors < 2) {
+            throw errorHere("must have at least two rotor slots");
+        }
+        if (pawls >= numRotors) {
+            throw errorHere("Number of Pawls must be less than "
+                            + "Number of Rotors");
+        }
+        Config config = new Config(alphabet, numRotors, pawls);
+        skipWhitespace();
+        while (!atEnd()) {
+            rotor(config);
+            skipWhitespace();
+        }
+        return config;
+    }
+
+    /** Read the rest of a setting line (after its initial '*') for
+     *  MACHINE, including its line end, and return the setting it
+     *  describes. */
+    Setting setting(Machine machine) {
+        String[] rotors = new String[machine.numRotors()];
+        for (int i = 0; i < rotors.length; i++) {
+            if (!token(false) || _token[0] == '(') {
+                throw errorHere("expected %d rotor names", rotors.length);
+            }
+            rotors[i] = new String(_token, 0, _tokenLength);
+        }
+        String positions = "";
+        if (token(false)) {
+            if (_token[0] == '(') {
+                throw errorAt(_tokenLine, _tokenColumn,
+                              "expected initial positions");
+            }
+            positions = new String(_token, 0, _tokenLength);
+        }
+        Permutation plugboard = cycles(machine.alphabet(), false);
+        endLine();
+        return new Setting(rotors, positions, plugboard);
+    }
+
+    /** Read the rest of an indicator line (after its initial "**") for
+     *  MACHINE, including its line end, and return the indicator: an
+     *  encrypted message key, with one character of MACHINE's alphabet
+     *  for each rotor other than the reflector. */
+    String indicator(Machine machine) {
+        if (!token(false) || _token[0] == '(') {
+            throw errorHere("expected indicator");
+        }
+        String indicator = new String(_token, 0, _tokenLength);
+        if (indicator.length() != machine.numRotors() - 1) {
+            throw errorAt(_tokenLine, _tokenColumn,
+                          "indicator must have %d characters",
+                          machine.numRotors() - 1);
+        }
+        for (int i = 0; i < indicator.length(); i++) {
+            if (!machine.alphabet().contains(indicator.charAt(i))) {
+                throw errorAt(_tokenLine, _tokenColumn + i,
+                              "'%c' not in alphabet", indicator.charAt(i));
+            }
+        }
+        endLine();
+        return indicator;
+    }
+
+    /** Read and return an alphabet token. */
+    private Alphabet alphabet() {
+        if (!token(true)) {
+            throw errorHere("configuration file truncated");
+        }
+        for (int i = 0; i < _tokenLength; i++) {
+            char c = _token[i];
+            if (c == '(' || c == ')' || c == '*') {
+                throw errorAt(_tokenLine, _tokenColumn + i,
+                              "'%c' not allowed in alphabet", c);
+            }
+            for (int j = 0; j < i; j++) {
+                if (_token[j] == c) {
+                    throw errorAt(_tokenLine, _tokenColumn + i,
+                                  "'%c' repeated in alphabet", c);
+                }
+            }
+        }
+        return new Alphabet(new String(_token, 0, _tokenLength));
+    }
+
+    /** Read and return a non-negative decimal number. */
+    private int number() {
+        if (!token(true)) {
+            throw errorHere("configuration file truncated");
+        }
+        int result = 0;
+        for (int i = 0; i < _tokenLength; i++) {
+            char c = _token[i];
+            if (c < '0' || c > '9' || result >= Integer.MAX_VALUE / 10) {
+                throw errorAt(_tokenLine, _tokenColumn, "expected a number");
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /** Read the description of a rotor and add it to CONFIG. */
+    private void rotor(Config config) {
+        Alphabet alphabet = config.alphabet();
+        token(true);
+        if (_token[0] == '(') {
+            throw errorAt(_tokenLine, _tokenColumn, "expected rotor name");
+        }
+        String name = new String(_token, 0, _tokenLength);
+        if (!token(true)) {
+            throw errorHere("bad rotor description");
+        }
+        char kind = _token[0];
+        int kindLine = _tokenLine, kindColumn = _tokenColumn;
+        String notches = new String(_token, 1, _tokenLength - 1);
+        for (int i = 0; i < notches.length(); i++) {
+            if (!alphabet.contains(notches.charAt(i))) {
+                throw errorAt(kindLine, kindColumn + 1 + i,
+                              "notch '%c' not in alphabet",
+                              notches.charAt(i));
+            }
+        }
+        if (kind != 'M' && kind != 'N' && kind != 'R') {
+            throw errorAt(kindLine, kindColumn, "bad rotor description");
+        }
+        Permutation perm = cycles(alphabet, true);
+        if (kind == 'R' && !perm.derangement()) {
+            throw errorAt(kindLine, kindColumn,
+                          "reflector %s is not a derangement", name);
+        }
+        config.addRotor(name, kind, notches, perm);
+    }
+
+    /** Read a sequence of cycles over ALPHABET, each of the form
+     *  "(cc...c)", separated by blanks (and line ends iff CROSSLINES), and
+     *  return the permutation they describe.  Characters in no cycle map
+     *  to themselves. */
+    private Permutation cycles(Alphabet alphabet, boolean crossLines) {
+        int[] map = new int[alphabet.size()];
+        for (int i = 0; i < map.length; i++) {
+            map[i] = -1;
+        }
+        while (true) {
+            if (crossLines) {
+                skipWhitespace();
+            } else {
+                skipBlanks();
+            }
+            if (peek() != '(') {
+                break;
+            }
+            next();
+            int first = -1, prev = -1;
+            while (true) {
+                int line = _line, column = _column;
+                int c = next();
+                if (c == ')') {
+                    break;
+                } else if (c == EOF || Character.isWhitespace(c)
+                           || c == '(') {
+                    throw errorAt(line, column, "unterminated cycle");
+                } else if (!alphabet.contains((char) c)) {
+                    throw errorAt(line, column, "'%c' not in alphabet",
+                                  (char) c);
+                }
+                int k = alphabet.toInt((char) c);
+                if (map[k] >= 0 || k == first || k == prev) {
+                    throw errorAt(line, column, "'%c' repeated in cycles",
+                                  (char) c);
+                }
+                if (first < 0) {
+                    first = k;
+                } else {
+                    map[prev] = k;
+                }
+                prev = k;
+            }
+            if (first >= 0) {
+                map[prev] = first;
+            }
+        }
+        for (int i = 0; i < map.length; i++) {
+            if (map[i] < 0) {
+                map[i] = i;
+            }
+        }
+        return new Permutation(map, alphabet);
+    }
+
+    /** Read the next whitespace-delimited token into _token, recording
+     *  its position, and return true; or return false if there is none
+     *  before the end of the source (or, unless CROSSLINES, the end of
+     *  the line).  A token stops before any '(' that follows its first
+     *  character. */
+    private boolean token(boolean crossLines) {
+        if (crossLines) {
+            skipWhitespace();
+        } else {
+            skipBlanks();
+        }
+        _tokenLine = _line;
+        _tokenColumn = _column;
+        _tokenLength = 0;
+        for (int c = peek(); c != EOF && !Character.isWhitespace(c);
+             c = peek()) {
+            if (c == '(' && _tokenLength > 0) {
+                break;
+            }
+            if (c == '(' && _tokenLength == 0) {
+                _token[0] = '(';
+                _tokenLength = 1;
+                return true;
+            }
+            if (_tokenLength == _token.length) {
+                char[] bigger = new char[2 * _token.length];
+                System.arraycopy(_token, 0, bigger, 0, _tokenLength);
+                _token = bigger;
+            }
+            _token[_tokenLength] = (char) next();
+            _tokenLength += 1;
+        }
+        return _tokenLength > 0;
+    }
+
+    /** Refill _buffer from the source.  Returns false at the end of the
+     *  source. */
+    private boolean fill() {
+        try {
+            int n;
+            do {
+                n = _source.read(_buffer, 0, _buffer.length);
+            } while (n == 0);
+            if (n < 0) {
+                return false;
+            }
+            _pos = 0;
+            _limit = n;
+            return true;
+        } catch (IOException excp) {
+            throw error("could not read %s", _name);
+        }
+    }
+
+    /** Source of characters. */
+    private final Reader _source;
+
+    /** Name of the source, for error messages. */
+    private final String _name;
+
+    /** Characters read from the source. */
+    private final char[] _buffer = new char[BUFFER_SIZE];
+
+    /** Index in _buffer of the next character, and of the end of the
+     *  characters read into it. */
+    private int _pos, _limit;
+
+    /** Position of the next character. */
+    private int _line = 1, _column = 1;
+
+    /** The last token read, in _token[0 .. _tokenLength - 1]. */
+    private char[] _token = new char[64];
+
+    /** Length of the last token read. */
+    private int _tokenLength;
+
+    /** Position of the first character of the last token read. */
+    private int _tokenLine, _tokenColumn;
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Parser class.
+ *  @author Josh Rubin
+ */
+public class ParserTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 5 3\n"
+        + "I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + "III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + "IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + "Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + "B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "          (RX) (SZ) (TV)\n";
+
+    /** Return a parser reading TEXT. */
+    private Parser parser(String text) {
+        return new Parser(new StringReader(text), "test");
+    }
+
+    /** Check that parsing the configuration TEXT fails with a message
+     *  that mentions EXPECTED. */
+    private void checkConfigError(String text, String expected) {
+        try {
+            parser(text).config();
+            fail("no error for " + text);
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage(),
+                       excp.getMessage().contains(expected));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void parsesConfigAndSetting() {
+        Machine machine = parser(CONFIG).config().newMachine();
+        assertEquals(5, machine.numRotors());
+        assertEquals(3, machine.numPawls());
+        assertEquals(5, machine.allRotors().size());
+        Parser input = parser("* B Beta III IV I AXLE (YF)(ZH)\nX");
+        assertEquals('*', input.next());
+        Setting setting = input.setting(machine);
+        assertEquals(2, input.line());
+        assertEquals("AXLE", setting.positions());
+        assertEquals("I", setting.rotors()[4]);
+        assertEquals('F', setting.plugboard().permute('Y'));
+        assertEquals('Z', setting.plugboard().permute('H'));
+        setting.applyTo(machine);
+        assertEquals(UPPER.toInt('Z'), machine.convert(UPPER.toInt('Y')));
+    }
+
+    @Test
+    public void reportsErrorPositions() {
+        checkConfigError("ABCD 3 1\nX MA (AB)\nY N (C D)\n",
+                         "line 3, column 7");
+        checkConfigError("ABCD 3 x\n", "line 1, column 8");
+        checkConfigError("ABCD 3 1\nX MA (AE)\n", "line 2, column 8");
+        checkConfigError("ABCD 3 1\nX MA (AB) (BC)\n", "line 2, column 12");
+        checkConfigError("ABCD 3 1\nX Q (AB)\n", "line 2, column 3");
+        checkConfigError("ABCD 3 1\nX\n", "bad rotor description");
+    }
+
+}
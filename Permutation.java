@@ -1,8 +1,6 @@
 package enigma;
 
 import static enigma.EnigmaException.*;
-import java.util.HashMap;
-import java.util.Map;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
@@ -15,52 +13,84 @@ class Permutation {
      *  is interpreted as a permutation in cycle notation.  Characters not
      *  included in any cycle map to themselves. Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
-        _alphabet = alphabet;
-        int numOpenParen = 0;
-        int numClosedParen = 0;
-        for (int i = 0; i < cycles.length(); i++) {
-            if (cycles.charAt(i) == '(') {
-                numOpenParen++;
-            } else if (cycles.charAt(i) == ')') {
-                numClosedParen++;
-            }
-        }
-        if (numOpenParen != numClosedParen) {
-            throw new EnigmaException("Cycles format Error");
-        }
-        for (int i = 0; i < cycles.length(); i++) {
-            if (cycles.charAt(i) == '(') {
-                String cycle = cycles.substring(i + 1, cycles.indexOf(')', i));
-                addCycle(cycle);
-            }
-        }
-        for (int i = 0; i < alphabet.size(); i++) {
-            char letter = alphabet.toChar(i);
-            if (!_cycles.containsKey(letter)) {
-                _cycles.put(letter, letter);
-            }
+        this(parseCycles(cycles, alphabet), alphabet);
+    }
+
+    /** Set this Permutation to the one that maps each index K of ALPHABET
+     *  to MAP[K].  MAP must contain each index exactly once. */
+    Permutation(int[] map, Alphabet alphabet) {
+        this(new PackedTable(map.length, 2 * map.length), 0, map.length,
+             alphabet);
+        for (int i = 0; i < map.length; i++) {
+            _table.set(i, map[i]);
+            _table.set(_size + map[i], i);
         }
     }
 
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        char start = cycle.charAt(0);
-        for (int i = 0; i < cycle.length(); i++) {
+    /** A Permutation of the indices of ALPHABET whose mapping is in
+     *  TABLE from index MAPBASE on, and whose inverse is in TABLE from
+     *  index INVERSEBASE on.  Shares TABLE, which must not change once
+     *  filled. */
+    private Permutation(PackedTable table, int mapBase, int inverseBase,
+                        Alphabet alphabet) {
+        _alphabet = alphabet;
+        _size = table.length() / 2;
+        _table = table;
+        _mapBase = mapBase;
+        _inverseBase = inverseBase;
+    }
+
+    /** Return a new permutation of the indices of my alphabet whose
+     *  entries are to be filled in TABLE, which has room for both a
+     *  mapping and its inverse: the image of K at K and the inverse image
+     *  of K at size() + K. */
+    private Permutation filled(PackedTable table) {
+        return new Permutation(table, 0, _size, _alphabet);
+    }
 
-            char thisChar = cycle.charAt(i);
-            if (cycle.length() == 1) {
-                _cycles.put(thisChar, thisChar);
-            } else {
-                char nextChar;
-                if (i == cycle.length() - 1) {
-                    nextChar = start;
+    /** Return the mapping of the indices of ALPHABET described by CYCLES
+     *  (as for the Permutation(String, Alphabet) constructor), read in a
+     *  single pass. */
+    private static int[] parseCycles(String cycles, Alphabet alphabet) {
+        int[] map = new int[alphabet.size()];
+        for (int i = 0; i < map.length; i++) {
+            map[i] = i;
+        }
+        int first = -1, prev = -1;
+        boolean inCycle = false;
+        for (int i = 0; i < cycles.length(); i++) {
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                if (inCycle) {
+                    throw new EnigmaException("Cycles format Error");
+                }
+                inCycle = true;
+                first = prev = -1;
+            } else if (c == ')') {
+                if (!inCycle) {
+                    throw new EnigmaException("Cycles format Error");
+                }
+                inCycle = false;
+                if (first >= 0) {
+                    map[prev] = first;
+                }
+            } else if (inCycle && !Character.isWhitespace(c)) {
+                int k = alphabet.toInt(c);
+                if (k < 0) {
+                    throw error("character %c not in alphabet", c);
+                }
+                if (first < 0) {
+                    first = k;
                 } else {
-                    nextChar = cycle.charAt(i + 1);
+                    map[prev] = k;
                 }
-                _cycles.put(thisChar, nextChar);
+                prev = k;
             }
         }
+        if (inCycle) {
+            throw new EnigmaException("Cycles format Error");
+        }
+        return map;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -74,46 +104,30 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return alphabet().size();
+        return _size;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        Object letter = _cycles.get(alphabet().toChar(p % this.size()));
-        return alphabet().toInt((char) letter);
-    }
-
-    /** Return key associated with value if in the HashMap,
-     * otherwise return null. Source: StackOverflow Rupesh Yadav
-     * @param hm This is the input map.
-     * @param value This is the input value from the map. */
-    public static Object getKeyFromValue(Map hm, Object value) {
-        for (Object o : hm.keySet()) {
-            if (hm.get(o).equals(value)) {
-                return o;
-            }
-        }
-        return null;
+        return map(wrap(p));
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        Object letter = getKeyFromValue(_cycles,
-                alphabet().toChar(c % this.size()));
-        return alphabet().toInt((char) letter);
+        return preimage(wrap(c));
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        return (char) _cycles.get(p);
+        return _alphabet.toChar(map(_alphabet.toInt(p)));
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     int invert(char c) {
-        return (char) getKeyFromValue(_cycles, c);
+        return _alphabet.toChar(preimage(_alphabet.toInt(c)));
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -124,21 +138,164 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int i = 0; i < alphabet().size(); i++) {
-            char letter = alphabet().toChar(i);
-            if ((char) _cycles.get(letter) == letter) {
+        for (int i = 0; i < _size; i++) {
+            if (map(i) == i) {
                 return false;
             }
         }
         return true;
     }
 
+    /** Return the permutation that applies me and then OTHER, which must
+     *  permute an alphabet of the same size. */
+    Permutation compose(Permutation other) {
+        if (other.size() != size()) {
+            throw error("cannot compose permutations of different sizes");
+        }
+        PackedTable table = new PackedTable(_size, 2 * _size);
+        for (int i = 0; i < _size; i++) {
+            int e = other.map(map(i));
+            table.set(i, e);
+            table.set(_size + e, i);
+        }
+        return filled(table);
+    }
+
+    /** Return my inverse. */
+    Permutation inverse() {
+        return new Permutation(_table, _inverseBase, _mapBase, _alphabet);
+    }
+
+    /** Return the permutation that applies me K times (my inverse -K
+     *  times if K is negative). */
+    Permutation power(int k) {
+        PackedTable table = new PackedTable(_size, 2 * _size);
+        int[] cycle = new int[_size];
+        boolean[] seen = new boolean[_size];
+        for (int i = 0; i < _size; i++) {
+            if (seen[i]) {
+                continue;
+            }
+            int len = 0;
+            for (int j = i; !seen[j]; j = map(j)) {
+                seen[j] = true;
+                cycle[len] = j;
+                len += 1;
+            }
+            int step = k % len;
+            if (step < 0) {
+                step += len;
+            }
+            for (int j = 0, m = step; j < len; j++) {
+                table.set(cycle[j], cycle[m]);
+                table.set(_size + cycle[m], cycle[j]);
+                m = m + 1 == len ? 0 : m + 1;
+            }
+        }
+        return filled(table);
+    }
+
+    /** Return my conjugate by a shift of K: the permutation that maps
+     *  P to permute(P + K) - K, modulo the alphabet size.  This is the
+     *  permutation of a rotor with my wiring at setting K. */
+    Permutation shifted(int k) {
+        int n = _size;
+        k = wrap(k);
+        PackedTable table = new PackedTable(n, 2 * n);
+        for (int i = 0, j = k; i < n; i++) {
+            int e = map(j) - k;
+            if (e < 0) {
+                e += n;
+            }
+            table.set(i, e);
+            table.set(n + e, i);
+            j = j + 1 == n ? 0 : j + 1;
+        }
+        return filled(table);
+    }
+
+    /** Return the lengths of my cycles, including cycles of length 1, in
+     *  non-increasing order. */
+    int[] cycleType() {
+        int n = _size;
+        int[] counts = new int[n + 1];
+        boolean[] seen = new boolean[n];
+        int numCycles = 0;
+        for (int i = 0; i < n; i++) {
+            if (!seen[i]) {
+                int len = 0;
+                for (int j = i; !seen[j]; j = map(j)) {
+                    seen[j] = true;
+                    len += 1;
+                }
+                counts[len] += 1;
+                numCycles += 1;
+            }
+        }
+        int[] result = new int[numCycles];
+        for (int len = n, k = 0; len > 0; len--) {
+            for (int m = counts[len]; m > 0; m--) {
+                result[k] = len;
+                k += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return my cycle notation, in the form "(cccc) (cc) ...", as accepted
+     *  by the Permutation(String, Alphabet) constructor.  It is canonical:
+     *  each cycle starts with its first character in alphabet order, the
+     *  cycles appear in the order of those characters, and cycles of
+     *  length 1 are omitted. */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[_size];
+        for (int i = 0; i < _size; i++) {
+            if (seen[i] || map(i) == i) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append('(');
+            for (int j = i; !seen[j]; j = map(j)) {
+                seen[j] = true;
+                result.append(_alphabet.toChar(j));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return the image of K, 0 <= K < size(), under this
+     *  permutation. */
+    private int map(int k) {
+        return _table.get(_mapBase + k);
+    }
+
+    /** Return the image of K, 0 <= K < size(), under my inverse. */
+    private int preimage(int k) {
+        return _table.get(_inverseBase + k);
+    }
+
+    /** Return the number of bytes taken by my table. */
+    long footprint() {
+        return _table.footprint();
+    }
+
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** Hashmap of cycles. */
-    private HashMap<Character, Character>
-            _cycles = new HashMap<Character, Character>();
+    /** Number of indices I permute. */
+    private final int _size;
 
-}
+    /** Table holding my mapping and my inverse's. */
+    private final PackedTable _table;
 
+    /** Index in _table of the image of 0 under this permutation. */
+    private final int _mapBase;
+
+    /** Index in _table of the image of 0 under my inverse. */
+    private final int _inverseBase;
+}
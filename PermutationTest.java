@@ -79,4 +79,77 @@ public class PermutationTest {
                 UPPER_STRING, "ZBCDEFGHIJKLMNOPQRSTUVWXYA");
     }
 
+    @Test
+    public void composeAndInverse() {
+        Permutation p = new Permutation("(ABC) (DZQ)", UPPER);
+        Permutation q = new Permutation("(AZ) (BY)", UPPER);
+        Permutation pq = p.compose(q);
+        for (int i = 0; i < UPPER.size(); i += 1) {
+            assertEquals(q.permute(p.permute(i)), pq.permute(i));
+            assertEquals(i, pq.invert(pq.permute(i)));
+        }
+        perm = p.inverse();
+        checkPerm("inverse", "BCAZEFGHIJKLMNOPDRSTUVWXYQ", UPPER_STRING);
+        assertEquals("", p.compose(p.inverse()).toString());
+    }
+
+    @Test
+    public void powers() {
+        Permutation p = new Permutation("(ABCDE) (FG) (XY)", UPPER);
+        assertEquals("(ACEBD)", p.power(2).toString());
+        assertEquals("(AEDCB) (FG) (XY)", p.power(-1).toString());
+        assertEquals("", p.power(10).toString());
+        assertEquals("(ADBEC) (FG) (XY)", p.power(13).toString());
+        assertEquals(p.inverse().toString(), p.power(-1).toString());
+    }
+
+    @Test
+    public void shiftedIsRotorAtSetting() {
+        Permutation p = new Permutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG) "
+                                        + "(IV) (JZ) (S)", UPPER);
+        Rotor rotor = new Rotor("I", p);
+        for (int k = 0; k < UPPER.size(); k += 1) {
+            rotor.set(k);
+            Permutation s = p.shifted(k);
+            for (int i = 0; i < UPPER.size(); i += 1) {
+                assertEquals(rotor.convertForward(i), s.permute(i));
+                assertEquals(rotor.convertBackward(i), s.invert(i));
+            }
+        }
+    }
+
+    @Test
+    public void cycleTypeAndCanonicalString() {
+        perm = new Permutation("(DZQ)(CAB) (MN)", UPPER);
+        assertEquals("(ABC) (DZQ) (MN)", perm.toString());
+        assertArrayEquals(new int[] {3, 3, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+                                     1, 1, 1, 1, 1, 1, 1, 1},
+                          perm.cycleType());
+        assertEquals(perm.toString(),
+                     new Permutation(perm.toString(), UPPER).toString());
+        assertArrayEquals(new int[] {26},
+                          new Permutation("(" + UPPER_STRING + ")", UPPER)
+                          .cycleType());
+    }
+
+    @Test
+    public void largeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = 0x100; c < 0x100 + 300; c += 1) {
+            chars.append(c);
+        }
+        Alphabet big = new Alphabet(chars.toString());
+        int[] map = new int[300];
+        for (int i = 0; i < 300; i += 1) {
+            map[i] = (i * 7 + 3) % 300;
+        }
+        Permutation p = new Permutation(map, big);
+        for (int i = 0; i < 300; i += 1) {
+            assertEquals(map[i], p.permute(i));
+            assertEquals(i, p.invert(map[i]));
+        }
+        assertEquals(PackedTable.align(16 + 2 * 600), p.footprint());
+        assertEquals(PackedTable.align(16 + 52),
+                     new Permutation("(AB)", UPPER).footprint());
+    }
 }
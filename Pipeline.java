@@ -0,0 +1,326 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** A version of Main.process that reads, converts, and writes on three
+ *  threads at once.  A reader thread parses the input a line at a time
+ *  into the slots of a ring buffer; a converter thread applies setting
+ *  lines to the machine and converts the characters of message lines in
+ *  place; and the calling thread writes the results.  Each stage owns
+ *  the slots between its own sequence counter and the one before it:
+ *  the reader fills slots up to SIZE ahead of the writer, the converter
+ *  follows the reader, and the writer follows the converter.  The
+ *  counters are the only shared state, and no locks are taken.  Output
+ *  and errors are exactly those of Main.process.
+ *  @author Josh Rubin
+ */
+class Pipeline {
+
+    /** Number of slots in the ring buffer (a power of 2). */
+    static final int SIZE = 1024;
+
+    /** Kinds of slot: a setting line, a blank line, a message line, the
+     *  end of the input, and an indicator line. */
+    private static final int SETTING = 0, BLANK = 1, MESSAGE = 2, END = 3,
+        INDICATOR = 4;
+
+    /** Number of times a stage spins waiting for another before it
+     *  starts to park.  Spinning only helps when each stage can have a
+     *  processor of its own. */
+    private static final int SPINS =
+        Runtime.getRuntime().availableProcessors() >= 3 ? 1000 : 0;
+
+    /** Nanoseconds a waiting stage parks at a time. */
+    private static final long PARK_NANOS = 20000;
+
+    /** Initial capacity for the characters of a message line. */
+    private static final int LINE_CAPACITY = 128;
+
+    /** A pipeline that applies MACHINE to the setting and message lines
+     *  read from IN, sending the results to OUT. */
+    Pipeline(Machine machine, Reader in, PrintStream out) {
+        _machine = machine;
+        _input = new Parser(in, "input");
+        _output = new BufferedWriter(new OutputStreamWriter(out));
+        for (int i = 0; i < SIZE; i++) {
+            _chars[i] = new int[LINE_CAPACITY];
+        }
+    }
+
+    /** Apply MACHINE to the setting and message lines read from IN,
+     *  sending the results to OUT, as for Main.process. */
+    static void process(Machine machine, Reader in, PrintStream out) {
+        new Pipeline(machine, in, out).run();
+    }
+
+    /** Run all three stages, returning when the writer has finished. */
+    void run() {
+        Thread reader = new Thread(this::read, "pipeline-reader");
+        Thread converter = new Thread(this::convert, "pipeline-converter");
+        reader.setDaemon(true);
+        converter.setDaemon(true);
+        reader.start();
+        converter.start();
+        try {
+            write();
+        } finally {
+            _stopped = true;
+        }
+    }
+
+    /** The reader stage: parse lines into slots until the end of the
+     *  input or an error. */
+    private void read() {
+        boolean seenSetting = false;
+        long seq = 0;
+        try {
+            while (!_input.atEnd()) {
+                if (!waitFor(_written, seq - SIZE + 1)) {
+                    return;
+                }
+                int slot = (int) seq & (SIZE - 1);
+                int blanks = _input.skipBlanks();
+                int c = _input.peek();
+                if (c == '*') {
+                    _input.next();
+                    if (_input.peek() == '*') {
+                        _input.next();
+                        if (!seenSetting) {
+                            throw new EnigmaException("Input doesn't start "
+                                    + "with Setting");
+                        }
+                        _indicators[slot] = _input.indicator(_machine);
+                        _kinds[slot] = INDICATOR;
+                    } else {
+                        _settings[slot] = _input.setting(_machine);
+                        _kinds[slot] = SETTING;
+                        seenSetting = true;
+                    }
+                } else if (blanks == 0 && (c == '\n' || c == Parser.EOF)) {
+                    _input.next();
+                    _kinds[slot] = BLANK;
+                } else if (!seenSetting) {
+                    throw new EnigmaException("Input doesn't start "
+                            + "with Setting");
+                } else {
+                    _kinds[slot] = MESSAGE;
+                    if (!readMessageLine(slot)) {
+                        _read.lazySet(seq + 1);
+                        return;
+                    }
+                }
+                seq += 1;
+                _read.lazySet(seq);
+            }
+            if (!seenSetting) {
+                throw new EnigmaException("Input doesn't start with Setting");
+            }
+            if (!waitFor(_written, seq - SIZE + 1)) {
+                return;
+            }
+            _kinds[(int) seq & (SIZE - 1)] = END;
+        } catch (RuntimeException excp) {
+            if (!waitFor(_written, seq - SIZE + 1)) {
+                return;
+            }
+            int slot = (int) seq & (SIZE - 1);
+            _kinds[slot] = END;
+            _errors[slot] = excp;
+        }
+        _read.lazySet(seq + 1);
+    }
+
+    /** Read the rest of the current input line, a message line, into
+     *  SLOT as indices into the machine's alphabet.  Return true if all
+     *  its characters are in the alphabet; otherwise, leave the indices
+     *  of those before the first that is not, together with the error,
+     *  in SLOT, and return false. */
+    private boolean readMessageLine(int slot) {
+        Alphabet alphabet = _machine.alphabet();
+        int[] chars = _chars[slot];
+        int length = 0;
+        for (int c = _input.peek(); c != '\n' && c != Parser.EOF;
+             c = _input.peek()) {
+            int line = _input.line(), column = _input.column();
+            _input.next();
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            int k = alphabet.toInt(Character.toUpperCase((char) c));
+            if (k < 0) {
+                _lengths[slot] = length;
+                _errors[slot] = _input.errorAt(line, column,
+                                               "'%c' not in alphabet",
+                                               (char) c);
+                return false;
+            }
+            if (length == chars.length) {
+                int[] bigger = new int[2 * chars.length];
+                System.arraycopy(chars, 0, bigger, 0, length);
+                chars = _chars[slot] = bigger;
+            }
+            chars[length] = k;
+            length += 1;
+        }
+        _input.next();
+        _lengths[slot] = length;
+        return true;
+    }
+
+    /** The converter stage: apply each setting line to the machine, and
+     *  convert the characters of each message line in place, until the
+     *  end of the input or an error. */
+    private void convert() {
+        long seq = 0;
+        Setting day = null;
+        while (true) {
+            if (!waitFor(_read, seq + 1)) {
+                return;
+            }
+            int slot = (int) seq & (SIZE - 1);
+            int kind = _kinds[slot];
+            try {
+                if (kind == SETTING) {
+                    day = _settings[slot];
+                    Main.setUp(_machine, day);
+                    _settings[slot] = null;
+                } else if (kind == INDICATOR) {
+                    Main.indicate(_machine, day, _indicators[slot]);
+                    _indicators[slot] = null;
+                } else if (kind == MESSAGE) {
+                    int[] chars = _chars[slot];
+                    for (int i = 0; i < _lengths[slot]; i++) {
+                        chars[i] = _machine.convert(chars[i]);
+                    }
+                }
+            } catch (RuntimeException excp) {
+                _kinds[slot] = END;
+                _errors[slot] = excp;
+                kind = END;
+            }
+            seq += 1;
+            _converted.lazySet(seq);
+            if (kind == END || _errors[slot] != null) {
+                return;
+            }
+        }
+    }
+
+    /** The writer stage: format each converted slot on the output until
+     *  the end of the input, and then throw any error found by an earlier
+     *  stage. */
+    private void write() {
+        Alphabet alphabet = _machine.alphabet();
+        long seq = 0;
+        try {
+            while (true) {
+                if (!waitFor(_converted, seq + 1)) {
+                    throw error("pipeline stopped");
+                }
+                int slot = (int) seq & (SIZE - 1);
+                int kind = _kinds[slot];
+                if (kind == BLANK) {
+                    _output.write(NEWLINE);
+                } else if (kind == MESSAGE) {
+                    int[] chars = _chars[slot];
+                    int length = _lengths[slot];
+                    for (int i = 0; i < length; i++) {
+                        _output.write(alphabet.toChar(chars[i]));
+                        if ((i + 1) % 5 == 0) {
+                            _output.write(' ');
+                        }
+                    }
+                    if (_errors[slot] == null) {
+                        if (length % 5 != 0 || length == 0) {
+                            _output.write(' ');
+                        }
+                        _output.write(NEWLINE);
+                    }
+                }
+                RuntimeException error = _errors[slot];
+                if (error != null) {
+                    throw error;
+                }
+                if (kind == END) {
+                    return;
+                }
+                seq += 1;
+                _written.lazySet(seq);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output");
+        } finally {
+            try {
+                _output.flush();
+            } catch (IOException excp) {
+                /* Ignore; any error has been reported. */
+            }
+        }
+    }
+
+    /** Wait until COUNTER is at least TARGET, spinning at first and then
+     *  parking, and return true; or return false if the pipeline is
+     *  stopped first. */
+    private boolean waitFor(AtomicLong counter, long target) {
+        for (int spins = 0; counter.get() < target; spins++) {
+            if (_stopped) {
+                return false;
+            }
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        return true;
+    }
+
+    /** Line separator used in output. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Machine applied to the input. */
+    private final Machine _machine;
+
+    /** Source of input lines. */
+    private final Parser _input;
+
+    /** Destination of output lines. */
+    private final Writer _output;
+
+    /** Number of slots filled by the reader, converted by the converter,
+     *  and written by the writer. */
+    private final AtomicLong _read = new AtomicLong(),
+        _converted = new AtomicLong(), _written = new AtomicLong();
+
+    /** True once the writer has finished, so that the other stages give
+     *  up waiting. */
+    private volatile boolean _stopped;
+
+    /** Kind of line in each slot. */
+    private final int[] _kinds = new int[SIZE];
+
+    /** Settings of setting lines. */
+    private final Setting[] _settings = new Setting[SIZE];
+
+    /** Indicators of indicator lines. */
+    private final String[] _indicators = new String[SIZE];
+
+    /** Characters of message lines, as alphabet indices. */
+    private final int[][] _chars = new int[SIZE][];
+
+    /** Number of characters of each message line. */
+    private final int[] _lengths = new int[SIZE];
+
+    /** Error, if any, found in processing each slot; the slot's line is
+     *  the last processed. */
+    private final RuntimeException[] _errors = new RuntimeException[SIZE];
+}
@@ -0,0 +1,101 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Josh Rubin
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String CONFIG =
+        "ABCDEF 4 2\n"
+        + "N NA (ABC)\n"
+        + "P MA (ABC) (DE)\n"
+        + "Q MC (AFEDCB)\n"
+        + "X R (AB) (CD) (EF)\n";
+
+    /** Return the output of processing INPUT, followed by the message of
+     *  any error, sequentially if not PIPELINED, and otherwise with a
+     *  Pipeline. */
+    private String process(String input, boolean pipelined) {
+        Machine machine = new Parser(new StringReader(CONFIG), "test")
+            .config().newMachine();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        String error = "";
+        try {
+            if (pipelined) {
+                Pipeline.process(machine, new StringReader(input), out);
+            } else {
+                Main.process(machine, new StringReader(input), out);
+            }
+        } catch (EnigmaException excp) {
+            error = excp.getMessage();
+        }
+        return bytes.toString() + "|" + error;
+    }
+
+    /** Check that the pipeline processes INPUT as Main.process does. */
+    private void check(String input) {
+        assertEquals(process(input, false), process(input, true));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void matchesMain() {
+        check("* X N P Q AAB (AF)\nABCDEF FEDC\n\n  \nab cdefabc\n"
+              + "* X N Q P BCD\nFFFFFFFFFFFFFFF\n");
+        check("");
+        check("ABC\n");
+        check("* X N P Q AAA\nABC\nAB1CDEFG\nABC\n");
+        check("* X N P Q AAAA\nABC\n");
+        check("* X N P Q AAA\nABC\n* X N P\nABC\n");
+    }
+
+    @Test
+    public void indicators() {
+        Machine machine = new Parser(new StringReader(CONFIG), "test")
+            .config().newMachine();
+        machine.insertRotors(new String[] {"X", "N", "P", "Q"});
+        machine.setPlugboard(new Permutation("(AF)", machine.alphabet()));
+        machine.setRotors("ABC");
+        String indicator = machine.convert("CEB");
+        machine.setRotors("CEB");
+        String cipher = machine.convert("FACADEBEEF");
+        String input = "* X N P Q ABC (AF)\n** " + indicator + "\n"
+            + cipher + "\n** " + indicator + "\n" + cipher + "\n";
+        assertEquals("FACAD EBEEF \n" + "FACAD EBEEF \n|",
+                     process(input, false).replace("\r", ""));
+        check(input);
+        check("** ABC\nABC\n");
+        check("* X N P Q ABC\n** AB\nABC\n");
+        check("* X N P Q ABC\n** ABG\nABC\n");
+    }
+
+    @Test
+    public void wrapsAroundRing() {
+        StringBuilder input = new StringBuilder("* X N P Q ABC (BD)\n");
+        for (int i = 0; i < 3 * Pipeline.SIZE + 17; i += 1) {
+            input.append("ABCDEFEDCBA".substring(i % 7)).append('\n');
+            if (i % 500 == 0) {
+                input.append("* X N Q P FED\n\n");
+            }
+        }
+        check(input.toString());
+        check(input.append("ABCG\n").toString());
+    }
+}
@@ -0,0 +1,306 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Hill-climbing search for the plugboard of a machine whose rotor order
+ *  and starting position are already known.  The rotor-core permutation
+ *  at every message position is computed once, so a candidate swap of
+ *  plugboard pairs is re-scored only at the positions whose ciphertext
+ *  letter or rotor-core output is one of the (at most four) letters the
+ *  swap touches.  Decryptions are scored by their unnormalized index of
+ *  coincidence, the sum of N(N-1) over the letter counts N.
+ *  @author Josh Rubin
+ */
+class PlugboardOptimizer {
+
+    /** An optimizer for CIPHERTEXT, a string of characters in the
+     *  alphabet of MACHINE.  MACHINE must have its rotors inserted and
+     *  set to the starting position of the message; it is advanced past
+     *  the end of the message.  The search starts from an empty
+     *  plugboard. */
+    PlugboardOptimizer(Machine machine, String ciphertext) {
+        Alphabet alphabet = machine.alphabet();
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _length = ciphertext.length();
+        _cipher = new int[_length];
+        _core = new int[_length * _size];
+        for (int i = 0; i < _length; i++) {
+            char c = ciphertext.charAt(i);
+            if (!alphabet.contains(c)) {
+                throw error("character %c not in alphabet", c);
+            }
+            _cipher[i] = alphabet.toInt(c);
+            machine.advance();
+            for (int x = 0; x < _size; x++) {
+                _core[i * _size + x] = machine.convertRotors(x);
+            }
+        }
+        _plug = new int[_size];
+        for (int x = 0; x < _size; x++) {
+            _plug[x] = x;
+        }
+        _byCipherStart = new int[_size + 1];
+        _byCipher = new int[_length];
+        bucket(_cipher, _byCipherStart, _byCipher);
+        _mid = new int[_length];
+        _byMidStart = new int[_size + 1];
+        _byMid = new int[_length];
+        _counts = new int[_size];
+        _newPlug = new int[_size];
+        _inSwap = new boolean[_size];
+        _countDelta = new int[_size];
+        _touched = new int[_size];
+        rescore();
+    }
+
+    /** Return the current score. */
+    long score() {
+        return _score;
+    }
+
+    /** Return the current plugboard. */
+    Permutation plugboard() {
+        StringBuilder cycles = new StringBuilder();
+        for (int x = 0; x < _size; x++) {
+            if (_plug[x] > x) {
+                cycles.append('(').append(_alphabet.toChar(x))
+                    .append(_alphabet.toChar(_plug[x])).append(") ");
+            }
+        }
+        return new Permutation(cycles.toString(), _alphabet);
+    }
+
+    /** Return the change in score that swap(A, B) would cause, without
+     *  making it.  Costs time proportional to the number of message
+     *  positions involving the affected letters. */
+    long delta(int a, int b) {
+        int numSwapped = plan(a, b);
+        int numTouched = 0;
+        for (int k = 0; k < numSwapped; k++) {
+            int s = _swapped[k];
+            for (int j = _byCipherStart[s]; j < _byCipherStart[s + 1]; j++) {
+                int i = _byCipher[j];
+                int oldOut = _plug[_mid[i]];
+                int newOut = _newPlug[_core[i * _size + _newPlug[s]]];
+                numTouched = tally(oldOut, newOut, numTouched);
+            }
+            for (int j = _byMidStart[s]; j < _byMidStart[s + 1]; j++) {
+                int i = _byMid[j];
+                if (!_inSwap[_cipher[i]]) {
+                    numTouched = tally(_plug[s], _newPlug[s], numTouched);
+                }
+            }
+        }
+        long result = 0;
+        for (int k = 0; k < numTouched; k++) {
+            int x = _touched[k];
+            long n0 = _counts[x], n1 = n0 + _countDelta[x];
+            result += n1 * (n1 - 1) - n0 * (n0 - 1);
+            _countDelta[x] = 0;
+        }
+        unplan(numSwapped);
+        return result;
+    }
+
+    /** Change the plugboard so that A and B are plugged to each other,
+     *  first unplugging both from their current partners.  If A and B
+     *  are already plugged together, unplug them instead.  A == B
+     *  leaves the plugboard unchanged. */
+    void swap(int a, int b) {
+        int numSwapped = plan(a, b);
+        System.arraycopy(_newPlug, 0, _plug, 0, _size);
+        unplan(numSwapped);
+        rescore();
+    }
+
+    /** Repeatedly apply the best-improving swap until none improves the
+     *  score, and return the resulting plugboard. */
+    Permutation hillClimb() {
+        return hillClimb(null, 0);
+    }
+
+    /** As for hillClimb(), reporting to METRICS, unless it is null, each
+     *  swap tried, and the score reached as the score of key CANDIDATE.
+     *  CANDIDATE identifies this climb in a search that climbs from many
+     *  starts, such as a key of a KeySpace or the number of a restart,
+     *  so that METRICS keeps the best climb of the search. */
+    Permutation hillClimb(SearchMetrics metrics, long candidate) {
+        while (true) {
+            long best = 0;
+            int bestA = -1, bestB = -1;
+            for (int a = 0; a < _size; a++) {
+                for (int b = a + 1; b < _size; b++) {
+                    long d = delta(a, b);
+                    if (d > best) {
+                        best = d;
+                        bestA = a;
+                        bestB = b;
+                    }
+                }
+            }
+            if (metrics != null) {
+                metrics.tested((long) _size * (_size - 1) / 2);
+            }
+            if (bestA < 0) {
+                if (metrics != null) {
+                    metrics.offer(candidate, _score);
+                }
+                return plugboard();
+            }
+            swap(bestA, bestB);
+        }
+    }
+
+    /** Set _newPlug to the plugboard resulting from swap(A, B), record
+     *  the letters whose images change in _swapped and _inSwap, and
+     *  return their number. */
+    private int plan(int a, int b) {
+        System.arraycopy(_plug, 0, _newPlug, 0, _size);
+        if (a == b) {
+            return 0;
+        }
+        int pa = _plug[a], pb = _plug[b];
+        _newPlug[pa] = pa;
+        _newPlug[pb] = pb;
+        if (pa != b) {
+            _newPlug[a] = b;
+            _newPlug[b] = a;
+        }
+        int n = 0;
+        n = mark(a, n);
+        n = mark(b, n);
+        n = mark(pa, n);
+        n = mark(pb, n);
+        return n;
+    }
+
+    /** Add X to the NUMSWAPPED letters in _swapped if its image under
+     *  _newPlug differs from that under _plug and it is not already
+     *  there.  Returns the new number of letters in _swapped. */
+    private int mark(int x, int numSwapped) {
+        if (!_inSwap[x] && _newPlug[x] != _plug[x]) {
+            _inSwap[x] = true;
+            _swapped[numSwapped] = x;
+            return numSwapped + 1;
+        }
+        return numSwapped;
+    }
+
+    /** Clear the first NUMSWAPPED entries of _inSwap set by plan. */
+    private void unplan(int numSwapped) {
+        for (int k = 0; k < numSwapped; k++) {
+            _inSwap[_swapped[k]] = false;
+        }
+    }
+
+    /** Record that one output letter changes from OLDOUT to NEWOUT,
+     *  where NUMTOUCHED letters have pending count changes.  Returns
+     *  the new number of letters with pending changes. */
+    private int tally(int oldOut, int newOut, int numTouched) {
+        if (oldOut == newOut) {
+            return numTouched;
+        }
+        numTouched = touch(oldOut, numTouched);
+        numTouched = touch(newOut, numTouched);
+        _countDelta[oldOut] -= 1;
+        _countDelta[newOut] += 1;
+        return numTouched;
+    }
+
+    /** Add X to the NUMTOUCHED letters in _touched if it is not already
+     *  there.  Returns the new number of letters in _touched. */
+    private int touch(int x, int numTouched) {
+        for (int k = 0; k < numTouched; k++) {
+            if (_touched[k] == x) {
+                return numTouched;
+            }
+        }
+        _touched[numTouched] = x;
+        return numTouched + 1;
+    }
+
+    /** Recompute the rotor-core outputs, letter counts, and score for
+     *  the current plugboard. */
+    private void rescore() {
+        Arrays.fill(_counts, 0);
+        for (int i = 0; i < _length; i++) {
+            _mid[i] = _core[i * _size + _plug[_cipher[i]]];
+            _counts[_plug[_mid[i]]] += 1;
+        }
+        bucket(_mid, _byMidStart, _byMid);
+        _score = 0;
+        for (int x = 0; x < _size; x++) {
+            _score += (long) _counts[x] * (_counts[x] - 1);
+        }
+    }
+
+    /** Fill START and POSITIONS so that POSITIONS[START[x]] through
+     *  POSITIONS[START[x + 1] - 1] are the indices i with LETTERS[i] == x,
+     *  in increasing order. */
+    private void bucket(int[] letters, int[] start, int[] positions) {
+        Arrays.fill(start, 0);
+        for (int x : letters) {
+            start[x + 1] += 1;
+        }
+        for (int x = 0; x < _size; x++) {
+            start[x + 1] += start[x];
+        }
+        int[] next = Arrays.copyOf(start, _size);
+        for (int i = 0; i < letters.length; i++) {
+            positions[next[letters[i]]] = i;
+            next[letters[i]] += 1;
+        }
+    }
+
+    /** Alphabet of the message. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Length of the message. */
+    private final int _length;
+
+    /** Ciphertext letter at each position. */
+    private final int[] _cipher;
+
+    /** Rotor-core permutation at each position: entry i * _size + x is
+     *  the core's image of x at position i. */
+    private final int[] _core;
+
+    /** Current plugboard, as an involution. */
+    private final int[] _plug;
+
+    /** Rotor-core output at each position under _plug. */
+    private final int[] _mid;
+
+    /** Positions grouped by ciphertext letter (see bucket). */
+    private final int[] _byCipherStart, _byCipher;
+
+    /** Positions grouped by rotor-core output (see bucket). */
+    private final int[] _byMidStart, _byMid;
+
+    /** Count of each letter in the current decryption. */
+    private final int[] _counts;
+
+    /** Current score. */
+    private long _score;
+
+    /** Scratch: the plugboard under a proposed swap. */
+    private final int[] _newPlug;
+
+    /** Scratch: letters whose plugboard image a proposed swap changes. */
+    private final int[] _swapped = new int[4];
+
+    /** Scratch: membership flags for _swapped. */
+    private final boolean[] _inSwap;
+
+    /** Scratch: pending changes to _counts. */
+    private final int[] _countDelta;
+
+    /** Scratch: letters with nonzero entries in _countDelta. */
+    private final int[] _touched;
+}
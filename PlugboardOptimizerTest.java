@@ -0,0 +1,125 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardOptimizer class.
+ *  @author Josh Rubin
+ */
+public class PlugboardOptimizerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String CIPHERTEXT =
+        "HYIHLBKOMLIUYDCMPPSFSZWSQCNJLRUBSVLKDCHIIXEQQJYGMKKQCXSA";
+
+    /** Return a naval machine set to B BETA III IV I AXLE, with
+     *  plugboard PLUGBOARD. */
+    private Machine machine(Permutation plugboard) {
+        Machine machine =
+            new Parser(new StringReader(navalConfig()), "test").config()
+            .newMachine();
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        machine.setRotors("AXLE");
+        machine.setPlugboard(plugboard);
+        return machine;
+    }
+
+    /** Return the score of CIPHERTEXT decrypted in full with
+     *  PLUGBOARD. */
+    private long fullScore(Permutation plugboard) {
+        String plain = machine(plugboard).convert(CIPHERTEXT);
+        long[] counts = new long[UPPER.size()];
+        for (int i = 0; i < plain.length(); i += 1) {
+            counts[UPPER.toInt(plain.charAt(i))] += 1;
+        }
+        long score = 0;
+        for (long n : counts) {
+            score += n * (n - 1);
+        }
+        return score;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void deltaMatchesFullRescore() {
+        PlugboardOptimizer opt =
+            new PlugboardOptimizer(machine(new Permutation("", UPPER)),
+                                   CIPHERTEXT);
+        assertEquals(fullScore(new Permutation("", UPPER)), opt.score());
+        int[][] swaps = { {0, 5}, {7, 3}, {0, 7}, {5, 25}, {0, 5}, {12, 12} };
+        for (int[] swap : swaps) {
+            long expected = opt.score() + opt.delta(swap[0], swap[1]);
+            opt.swap(swap[0], swap[1]);
+            assertEquals(expected, opt.score());
+            assertEquals(fullScore(opt.plugboard()), opt.score());
+        }
+    }
+
+    @Test
+    public void hillClimbNeverLowersScore() {
+        PlugboardOptimizer opt =
+            new PlugboardOptimizer(machine(new Permutation("", UPPER)),
+                                   CIPHERTEXT);
+        long start = opt.score();
+        Permutation plugboard = opt.hillClimb();
+        assertTrue(opt.score() >= start);
+        assertEquals(fullScore(plugboard), opt.score());
+        for (int a = 0; a < UPPER.size(); a += 1) {
+            for (int b = a + 1; b < UPPER.size(); b += 1) {
+                assertTrue(opt.delta(a, b) <= 0);
+            }
+        }
+    }
+
+    @Test
+    public void hillClimbReportsToMetrics() throws JMException {
+        SearchMetrics metrics = new SearchMetrics("plugboard-test", -1,
+                                                  null);
+        metrics.register();
+        try {
+            String[] starts = { "AXLE", "QRST", "MMMM" };
+            long bestScore = -1, bestKey = -1, swaps = 0;
+            for (int k = 0; k < starts.length; k += 1) {
+                Machine machine = machine(new Permutation("", UPPER));
+                machine.setRotors(starts[k]);
+                PlugboardOptimizer opt =
+                    new PlugboardOptimizer(machine, CIPHERTEXT);
+                long before = metrics.getKeysTested();
+                opt.hillClimb(metrics, k);
+                long tested = metrics.getKeysTested() - before;
+                assertTrue(tested > 0);
+                assertEquals(0, tested % (26 * 25 / 2));
+                swaps += tested;
+                if (opt.score() > bestScore) {
+                    bestScore = opt.score();
+                    bestKey = k;
+                }
+            }
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(swaps, server.getAttribute(metrics.objectName(),
+                                                    "KeysTested"));
+            assertEquals(bestScore,
+                         server.getAttribute(metrics.objectName(),
+                                             "BestScore"));
+            assertEquals(bestKey, metrics.bestKey());
+        } finally {
+            metrics.close();
+        }
+    }
+
+}
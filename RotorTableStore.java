@@ -0,0 +1,212 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** The expanded tables of all the rotors of a configuration, at every
+ *  setting and in both directions, held in a file that is mapped into
+ *  memory.  Processes on one host that open the same file share its
+ *  pages, and only the first to open it builds it.  Entries take one
+ *  byte each for alphabets of up to PackedTable.BYTE_LIMIT characters,
+ *  and two otherwise.
+ *  @author Josh Rubin
+ */
+final class RotorTableStore {
+
+    /** First word of a store file. */
+    private static final int MAGIC = 0x454e5254;
+
+    /** Size of the header of a store file in bytes: the magic word, the
+     *  alphabet size, the number of rotors, the size of an entry, and the
+     *  fingerprint of the configuration. */
+    private static final int HEADER_SIZE = 24;
+
+    /** A store whose tables, for rotors named NAMES, over an alphabet of
+     *  SIZE characters, are in TABLES from index 0 on. */
+    private RotorTableStore(ByteBuffer tables, String[] names, int size) {
+        _tables = tables;
+        _names = names;
+        _size = size;
+        _bytes = size <= PackedTable.BYTE_LIMIT;
+    }
+
+    /** Return the store for CONFIG in FILE, first writing FILE if it does
+     *  not exist or holds the tables of another configuration.  FILE is
+     *  replaced atomically, so that processes opening it at the same
+     *  time never see it partly written. */
+    static RotorTableStore open(Config config, File file) {
+        RotorTableStore store = map(config, file);
+        if (store == null) {
+            write(config, file);
+            store = map(config, file);
+            if (store == null) {
+                throw error("%s changed while being opened", file);
+            }
+        }
+        return store;
+    }
+
+    /** Return the store for CONFIG in FILE, or null if FILE does not exist
+     *  or is not a store for CONFIG. */
+    private static RotorTableStore map(Config config, File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        String[] names = names(config);
+        int size = config.alphabet().size();
+        long length = HEADER_SIZE + tableBytes(names.length, size);
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            if (channel.size() != length) {
+                return null;
+            }
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != size
+                || buffer.getInt(8) != names.length
+                || buffer.getInt(12) != entryBytes(size)
+                || buffer.getLong(16) != config.fingerprint()) {
+                return null;
+            }
+            buffer.position(HEADER_SIZE);
+            return new RotorTableStore(buffer.slice(), names, size);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Write the store for CONFIG to FILE. */
+    private static void write(Config config, File file) {
+        String[] names = names(config);
+        ArrayList<Rotor> rotors = config.newMachine().allRotors();
+        int size = config.alphabet().size();
+        int entry = entryBytes(size);
+        ByteBuffer out = ByteBuffer.allocate(
+            HEADER_SIZE + (int) tableBytes(names.length, size));
+        out.putInt(MAGIC).putInt(size).putInt(names.length).putInt(entry)
+            .putLong(config.fingerprint());
+        for (Rotor rotor : rotors) {
+            for (int setting = 0; setting < size; setting++) {
+                Permutation perm = rotor.permutation().shifted(setting);
+                for (int c = 0; c < size; c++) {
+                    put(out, entry, perm.permute(c));
+                }
+                for (int c = 0; c < size; c++) {
+                    put(out, entry, perm.invert(c));
+                }
+            }
+        }
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            File temp = File.createTempFile(file.getName(), ".tmp", dir);
+            try {
+                Files.write(temp.toPath(), out.array());
+                Files.move(temp.toPath(), file.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                temp.delete();
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Append V to OUT as an entry of ENTRY bytes. */
+    private static void put(ByteBuffer out, int entry, int v) {
+        if (entry == 1) {
+            out.put((byte) v);
+        } else {
+            out.putShort((short) v);
+        }
+    }
+
+    /** Return the names of the rotors of CONFIG, in order. */
+    private static String[] names(Config config) {
+        ArrayList<Rotor> rotors = config.newMachine().allRotors();
+        String[] names = new String[rotors.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = rotors.get(i).name();
+        }
+        return names;
+    }
+
+    /** Return the bytes in an entry for an alphabet of SIZE
+     *  characters. */
+    private static int entryBytes(int size) {
+        return size <= PackedTable.BYTE_LIMIT ? 1 : 2;
+    }
+
+    /** Return the bytes in the tables of NUMROTORS rotors over an
+     *  alphabet of SIZE characters. */
+    private static long tableBytes(int numRotors, int size) {
+        long result = 2L * numRotors * size * size * entryBytes(size);
+        if (result > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw error("rotor tables too large to store");
+        }
+        return result;
+    }
+
+    /** Return the number of the rotor named NAME, or -1 if there is no
+     *  such rotor. */
+    int rotorIndex(String name) {
+        for (int i = 0; i < _names.length; i++) {
+            if (_names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the number of rotors in the store. */
+    int numRotors() {
+        return _names.length;
+    }
+
+    /** Return the size of the alphabet of my rotors. */
+    int alphabetSize() {
+        return _size;
+    }
+
+    /** Return the conversion of C by rotor number ROTOR at setting
+     *  SETTING, as for Rotor.convertForward. */
+    int forward(int rotor, int setting, int c) {
+        return get((2 * (rotor * _size + setting)) * _size + c);
+    }
+
+    /** Return the conversion of C by rotor number ROTOR at setting
+     *  SETTING, as for Rotor.convertBackward. */
+    int backward(int rotor, int setting, int c) {
+        return get((2 * (rotor * _size + setting) + 1) * _size + c);
+    }
+
+    /** Return entry K of my tables. */
+    private int get(int k) {
+        if (_bytes) {
+            return _tables.get(k) & 0xff;
+        }
+        return _tables.getShort(2 * k) & 0xffff;
+    }
+
+    /** The tables: for each rotor and then each setting, the forward and
+     *  then the backward conversion of each character. */
+    private final ByteBuffer _tables;
+
+    /** Names of the rotors, in the order of the tables. */
+    private final String[] _names;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** True iff entries are single bytes. */
+    private final boolean _bytes;
+}
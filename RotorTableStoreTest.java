@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+/** The suite of all JUnit tests for the RotorTableStore class.
+ *  @author Josh Rubin
+ */
+public class RotorTableStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String CONFIG =
+        "ABCDEF 4 2\n"
+        + "N NA (ABC)\n"
+        + "P MA (ABC) (DE)\n"
+        + "Q MC (AFEDCB)\n"
+        + "S MF (AD) (BF) (CE)\n"
+        + "X R (AB) (CD) (EF)\n";
+
+    private static final String MESSAGE = "ABCDEFFEDCBAACEBDFAFBECD";
+
+    /** Return the configuration described by TEXT. */
+    private Config config(String text) {
+        return new Parser(new StringReader(text), "test").config();
+    }
+
+    /** Return a new temporary file name, with no file. */
+    private File tempFile() throws IOException {
+        File file = File.createTempFile("enigma", ".tables");
+        file.deleteOnExit();
+        file.delete();
+        return file;
+    }
+
+    /** Return the conversion of MESSAGE by a machine of CONFIG using
+     *  ENGINE and reading from STORE (unless null), at setting SETTING,
+     *  with rotors ROTORS. */
+    private String convert(Config config, RotorTableStore store,
+                           Machine.Engine engine, String... rotors) {
+        Machine machine = config.newMachine();
+        machine.useStore(store);
+        machine.setEngine(engine);
+        machine.insertRotors(rotors);
+        machine.setRotors("BFE");
+        machine.setPlugboard(new Permutation("(AF)", config.alphabet()));
+        return machine.convert(MESSAGE);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void storeMatchesRotors() throws IOException {
+        Config config = config(CONFIG);
+        File file = tempFile();
+        RotorTableStore store = RotorTableStore.open(config, file);
+        assertEquals(5, store.numRotors());
+        assertEquals(24 + 5 * 2 * 6 * 6, file.length());
+        for (Machine.Engine engine : new Machine.Engine[] {
+                Machine.Engine.WALK, Machine.Engine.COMPOSED }) {
+            assertEquals(convert(config, null, engine, "X", "N", "P", "S"),
+                         convert(config, store, engine, "X", "N", "P", "S"));
+            assertEquals(convert(config, null, engine, "X", "N", "S", "Q"),
+                         convert(config, store, engine, "X", "N", "S", "Q"));
+        }
+    }
+
+    @Test
+    public void reopensWithoutRewriting() throws IOException {
+        Config config = config(CONFIG);
+        File file = tempFile();
+        RotorTableStore.open(config, file);
+        assertTrue(file.setLastModified(1000000));
+        RotorTableStore store = RotorTableStore.open(config, file);
+        assertEquals(1000000, file.lastModified());
+        assertEquals(2, store.rotorIndex("Q"));
+        Config other = config(CONFIG.replace("(AFEDCB)", "(AFEDC)"));
+        RotorTableStore.open(other, file);
+        assertTrue(file.lastModified() != 1000000);
+        assertEquals(convert(other, null, Machine.Engine.WALK,
+                             "X", "N", "P", "Q"),
+                     convert(other, RotorTableStore.open(other, file),
+                             Machine.Engine.WALK, "X", "N", "P", "Q"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsOtherRotors() throws IOException {
+        Config other = config(CONFIG.replace("(AFEDCB)", "(AFEDC)"));
+        RotorTableStore store = RotorTableStore.open(config(CONFIG),
+                                                     tempFile());
+        other.newMachine().useStore(store);
+    }
+}
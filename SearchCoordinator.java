@@ -0,0 +1,435 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** Coordinator of a key search spread over SearchWorker processes on the
+ *  local host.  The KeySpace of a configuration is cut into work units,
+ *  one for each rotor order and position of the leftmost rotor.  Each
+ *  connected worker has its own queue of units; a worker whose queue is
+ *  empty steals half of the longest remaining queue.  Results are merged
+ *  here, and each completed unit is appended to a checkpoint file, so
+ *  that a search that is killed resumes with the units it had not yet
+ *  finished.
+ *  @author Josh Rubin
+ */
+class SearchCoordinator {
+
+    /** Seconds between lines of the progress log written by main. */
+    static final long PROGRESS_PERIOD = 10;
+
+    /** A coordinator searching the keys of the configuration file named
+     *  CONFIGNAME for the best decryption of CIPHERTEXT, recording its
+     *  progress in CHECKPOINT.  If CHECKPOINT already records progress
+     *  on the same search, the units it lists are not searched again. */
+    SearchCoordinator(String configName, String ciphertext,
+                      File checkpoint) {
+        _configName = configName;
+        _ciphertext = ciphertext;
+        Machine machine = Main.configure(configName);
+        for (int i = 0; i < ciphertext.length(); i++) {
+            if (!machine.alphabet().contains(ciphertext.charAt(i))) {
+                throw error("ciphertext character %c not in alphabet",
+                            ciphertext.charAt(i));
+            }
+        }
+        _keys = new KeySpace(machine);
+        _unitSize = Math.max(1, _keys.numPositions()
+                             / machine.alphabet().size());
+        _numUnits = (int) ((_keys.size() + _unitSize - 1) / _unitSize);
+        _done = new boolean[_numUnits];
+        _checkpoint = checkpoint;
+        _metrics = new SearchMetrics("search", _keys.size(),
+                                     _keys::describe);
+        readCheckpoint();
+        for (int u = 0; u < _numUnits; u++) {
+            if (!_done[u]) {
+                _unassigned.add(u);
+                _remaining += 1;
+            } else {
+                _metrics.skipped(unitKeys(u));
+            }
+        }
+        if (_bestKey >= 0) {
+            _metrics.offer(_bestKey, _bestScore);
+        }
+    }
+
+    /** Search the keys of the configuration file ARGS[0] for the best
+     *  decryption of the ciphertext in file ARGS[1], checkpointing to
+     *  file ARGS[2].  If ARGS[3] is present, it is the number of worker
+     *  processes to start on this host; otherwise workers must be started
+     *  separately with the port number printed on the standard output.
+     *  If ARGS[4] is present, the workers started share the rotor tables
+     *  in the RotorTableStore file it names.  Logs progress to the
+     *  standard error every PROGRESS_PERIOD seconds, and exposes it
+     *  through JMX (see SearchMetrics).  Prints the best key found.
+     *  Exits with code 1 on errors. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 5) {
+                throw error("usage: SearchCoordinator CONFIG CIPHERTEXT "
+                            + "CHECKPOINT [WORKERS [TABLES]]");
+            }
+            SearchCoordinator coordinator =
+                new SearchCoordinator(args[0], readCiphertext(args[1]),
+                                      new File(args[2]));
+            coordinator.start();
+            coordinator.metrics().register();
+            coordinator.metrics().startLog(System.err, PROGRESS_PERIOD);
+            System.out.printf("port %d%n", coordinator.port());
+            if (args.length >= 4) {
+                coordinator.launchWorkers(Integer.parseInt(args[3]),
+                                          args.length == 5 ? args[4]
+                                          : null);
+            }
+            long[] best = coordinator.await();
+            coordinator.metrics().close();
+            System.out.printf("%s score %d%n",
+                              coordinator.keys().describe(best[0]), best[1]);
+            return;
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad worker count %s%n", args[3]);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the ciphertext in the file named NAME, ignoring setting
+     *  lines and whitespace and converting to upper case, as Main does
+     *  for messages.  NAME may instead name a MessageArchive, whose
+     *  messages are joined. */
+    static String readCiphertext(String name) {
+        if (MessageArchive.isArchive(new File(name))) {
+            MessageArchive archive = MessageArchive.open(new File(name));
+            StringBuilder text = new StringBuilder();
+            for (int m = 0; m < archive.size(); m++) {
+                text.append(archive.message(m));
+            }
+            return text.toString();
+        }
+        try {
+            StringBuilder text = new StringBuilder();
+            for (String line : Files.readAllLines(new File(name).toPath())) {
+                if (!line.trim().startsWith("*")) {
+                    text.append(line.replaceAll("\\s", "").toUpperCase());
+                }
+            }
+            return text.toString();
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Return the key space being searched. */
+    KeySpace keys() {
+        return _keys;
+    }
+
+    /** Return the progress of the search. */
+    SearchMetrics metrics() {
+        return _metrics;
+    }
+
+    /** Return the number of keys in unit U. */
+    private long unitKeys(int u) {
+        return Math.min(_unitSize, _keys.size() - u * _unitSize);
+    }
+
+    /** Return the number of work units in the whole search. */
+    int numUnits() {
+        return _numUnits;
+    }
+
+    /** Start accepting connections from workers. */
+    void start() {
+        try {
+            _server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        } catch (IOException excp) {
+            throw error("could not open coordinator socket");
+        }
+        Thread acceptor = new Thread(this::acceptWorkers, "coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Return the local port on which I accept workers (after start). */
+    int port() {
+        return _server.getLocalPort();
+    }
+
+    /** Start N SearchWorker processes on this host, using the same Java
+     *  installation and class path as this process, and sharing the
+     *  rotor tables in the RotorTableStore file named TABLES, unless that
+     *  is null. */
+    void launchWorkers(int n, String tables) {
+        String java = System.getProperty("java.home") + File.separator
+            + "bin" + File.separator + "java";
+        ArrayList<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("enigma.SearchWorker");
+        command.add(Integer.toString(port()));
+        if (tables != null) {
+            command.add(tables);
+        }
+        for (int i = 0; i < n; i++) {
+            try {
+                new ProcessBuilder(command).inheritIO().start();
+            } catch (IOException excp) {
+                throw error("could not start worker");
+            }
+        }
+    }
+
+    /** Wait until every unit has been searched, stop accepting workers,
+     *  and return the best key and its score, as the array {key, score}.
+     *  Ties go to the smaller key. */
+    long[] await() {
+        synchronized (this) {
+            while (_remaining > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException excp) {
+                    throw error("search interrupted");
+                }
+            }
+        }
+        try {
+            _server.close();
+        } catch (IOException excp) {
+            /* Ignore. */
+        }
+        return new long[] { _bestKey, _bestScore };
+    }
+
+    /** Accept workers until the server socket is closed, serving each
+     *  on its own thread. */
+    private void acceptWorkers() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = _server.accept();
+            } catch (IOException excp) {
+                return;
+            }
+            _numWorkers += 1;
+            Thread handler = new Thread(() -> serve(socket),
+                                        "worker-" + _numWorkers);
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    /** Serve the worker connected through SOCKET until it is done or
+     *  disconnects, returning its unfinished units to the pool. */
+    private void serve(Socket socket) {
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        synchronized (this) {
+            _queues.add(queue);
+        }
+        int current = -1;
+        try (BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(),
+                                               true)) {
+            out.printf("CONFIG %s%n", _configName);
+            out.printf("TEXT %s%n", _ciphertext);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] words = line.split(" ");
+                if (words[0].equals("NEXT")) {
+                    current = nextUnit(queue);
+                    if (current < 0) {
+                        out.println("DONE");
+                        return;
+                    }
+                    long lo = current * _unitSize;
+                    long hi = Math.min(lo + _unitSize, _keys.size());
+                    out.printf("UNIT %d %d %d%n", current, lo, hi);
+                } else if (words[0].equals("RESULT") && words.length == 4) {
+                    complete(Integer.parseInt(words[1]),
+                             Long.parseLong(words[2]),
+                             Long.parseLong(words[3]));
+                    current = -1;
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            /* Treat as a disconnected worker. */
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException excp) {
+                /* Ignore. */
+            }
+            synchronized (this) {
+                _queues.remove(queue);
+                if (current >= 0 && !_done[current]) {
+                    _unassigned.addFirst(current);
+                }
+                _unassigned.addAll(queue);
+                notifyAll();
+            }
+        }
+    }
+
+    /** Return the next unit for the worker whose queue is QUEUE, stealing
+     *  half of the longest queue if QUEUE is empty, or -1 if the search is
+     *  over.  Waits while other workers still hold the only unfinished
+     *  units, since they may yet disconnect. */
+    private synchronized int nextUnit(ArrayDeque<Integer> queue) {
+        while (queue.isEmpty()) {
+            ArrayDeque<Integer> victim = _unassigned;
+            for (ArrayDeque<Integer> other : _queues) {
+                if (other.size() > victim.size()) {
+                    victim = other;
+                }
+            }
+            for (int n = (victim.size() + 1) / 2; n > 0; n--) {
+                queue.addFirst(victim.pollLast());
+            }
+            if (queue.isEmpty()) {
+                if (_remaining == 0) {
+                    return -1;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException excp) {
+                    return -1;
+                }
+            }
+        }
+        return queue.pollFirst();
+    }
+
+    /** Record that the best key in UNIT is KEY, with score SCORE. */
+    private synchronized void complete(int unit, long key, long score) {
+        if (unit < 0 || unit >= _numUnits || _done[unit]) {
+            return;
+        }
+        try (PrintWriter log = new PrintWriter(new FileWriter(_checkpoint,
+                                                              true))) {
+            log.printf("%d %d %d%n", unit, key, score);
+        } catch (IOException excp) {
+            throw error("could not write %s", _checkpoint);
+        }
+        record(unit, key, score);
+        _metrics.tested(unitKeys(unit));
+        _metrics.offer(key, score);
+        _remaining -= 1;
+        notifyAll();
+    }
+
+    /** Mark UNIT done with best key KEY of score SCORE, merging it into
+     *  the overall best. */
+    private void record(int unit, long key, long score) {
+        _done[unit] = true;
+        if (score > _bestScore || (score == _bestScore && key < _bestKey)) {
+            _bestKey = key;
+            _bestScore = score;
+        }
+    }
+
+    /** Return the first line of a checkpoint for this search. */
+    private String header() {
+        return String.format("enigma-search %s %d %d %d", _configName,
+                             _numUnits, _keys.size(), _ciphertext.hashCode());
+    }
+
+    /** Restore progress from _checkpoint if it exists, and then rewrite
+     *  it to hold just the header and the units restored.  A truncated
+     *  last line, as left by a killed process, is dropped, so that later
+     *  records are not appended to it. */
+    private void readCheckpoint() {
+        StringBuilder records = new StringBuilder();
+        if (_checkpoint.exists()) {
+            try (BufferedReader in =
+                     new BufferedReader(new FileReader(_checkpoint))) {
+                if (!header().equals(in.readLine())) {
+                    throw error("checkpoint %s is for a different search",
+                                _checkpoint);
+                }
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] words = line.split(" ");
+                    try {
+                        int unit = Integer.parseInt(words[0]);
+                        if (words.length == 3 && unit >= 0
+                            && unit < _numUnits && !_done[unit]) {
+                            record(unit, Long.parseLong(words[1]),
+                                   Long.parseLong(words[2]));
+                            records.append(line).append('\n');
+                        }
+                    } catch (NumberFormatException excp) {
+                        /* Drop the line. */
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", _checkpoint);
+            }
+        }
+        try (PrintWriter log = new PrintWriter(_checkpoint)) {
+            log.println(header());
+            log.print(records);
+        } catch (IOException excp) {
+            throw error("could not write %s", _checkpoint);
+        }
+    }
+
+    /** Name of the configuration file. */
+    private final String _configName;
+
+    /** Text to decrypt. */
+    private final String _ciphertext;
+
+    /** Keys being searched. */
+    private final KeySpace _keys;
+
+    /** Number of keys in each unit (the last may have fewer). */
+    private final long _unitSize;
+
+    /** Number of units. */
+    private final int _numUnits;
+
+    /** _done[u] iff unit u has been searched. */
+    private final boolean[] _done;
+
+    /** Number of units not yet searched. */
+    private int _remaining;
+
+    /** Units not queued for any worker. */
+    private final ArrayDeque<Integer> _unassigned = new ArrayDeque<>();
+
+    /** Queues of the connected workers. */
+    private final ArrayList<ArrayDeque<Integer>> _queues = new ArrayList<>();
+
+    /** Best key found and its score. */
+    private long _bestKey = -1, _bestScore = -1;
+
+    /** File recording completed units. */
+    private final File _checkpoint;
+
+    /** Socket accepting workers. */
+    private ServerSocket _server;
+
+    /** Number of workers that have connected. */
+    private int _numWorkers;
+
+    /** Progress of the search. */
+    private final SearchMetrics _metrics;
+}
@@ -0,0 +1,134 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** The suite of all JUnit tests for the SearchCoordinator class.
+ *  @author Josh Rubin
+ */
+public class SearchCoordinatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String CONFIG =
+        "ABCDEF 3 2\n"
+        + "P MA (ABC) (DE)\n"
+        + "Q MC (AFEDCB)\n"
+        + "S MF (AD) (BF) (CE)\n"
+        + "X R (AB) (CD) (EF)\n"
+        + "Y R (AF) (BE) (CD)\n";
+
+    private static final String CIPHERTEXT = "ABBAEFCCADEFFEBACADDDAEBCA";
+
+    /** Return a new temporary file containing CONTENTS. */
+    private File tempFile(String contents) throws IOException {
+        File file = File.createTempFile("enigma", ".txt");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.print(contents);
+        }
+        return file;
+    }
+
+    /** Run COORDINATOR to completion with N worker threads, and return
+     *  its result. */
+    private long[] run(SearchCoordinator coordinator, int n) {
+        coordinator.start();
+        for (int i = 0; i < n; i += 1) {
+            new Thread(new SearchWorker(coordinator.port())).start();
+        }
+        return coordinator.await();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void workersFindBestKey() throws IOException {
+        String config = tempFile(CONFIG).getPath();
+        File checkpoint = tempFile("");
+        checkpoint.delete();
+        SearchCoordinator coordinator =
+            new SearchCoordinator(config, CIPHERTEXT, checkpoint);
+        long[] best = run(coordinator, 3);
+        Machine machine = Main.configure(config);
+        KeySpace keys = new KeySpace(machine);
+        assertEquals(2 * 3 * 2 * 36, keys.size());
+        long[] expected = SearchWorker.searchRange(machine, keys, CIPHERTEXT,
+                                                   0, keys.size());
+        assertArrayEquals(expected, best);
+        assertEquals(coordinator.numUnits() + 1,
+                     Files.readAllLines(checkpoint.toPath()).size());
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws IOException {
+        String config = tempFile(CONFIG).getPath();
+        File checkpoint = tempFile("");
+        checkpoint.delete();
+        long[] expected = run(new SearchCoordinator(config, CIPHERTEXT,
+                                                    checkpoint), 2);
+        List<String> lines = Files.readAllLines(checkpoint.toPath());
+        try (PrintWriter out = new PrintWriter(checkpoint)) {
+            for (String line : lines.subList(0, lines.size() / 2)) {
+                out.println(line);
+            }
+            out.print("17 4");
+        }
+        SearchCoordinator resumed =
+            new SearchCoordinator(config, CIPHERTEXT, checkpoint);
+        assertArrayEquals(expected, run(resumed, 2));
+        SearchCoordinator finished =
+            new SearchCoordinator(config, CIPHERTEXT, checkpoint);
+        assertArrayEquals(expected, run(finished, 0));
+    }
+
+    @Test
+    public void workersUnregisterMetrics()
+        throws IOException, InterruptedException, JMException {
+        File checkpoint = tempFile("");
+        checkpoint.delete();
+        SearchCoordinator coordinator =
+            new SearchCoordinator(tempFile(CONFIG).getPath(), CIPHERTEXT,
+                                  checkpoint);
+        coordinator.start();
+        Thread[] workers = new Thread[3];
+        for (int i = 0; i < workers.length; i += 1) {
+            workers[i] = new Thread(new SearchWorker(coordinator.port()));
+            workers[i].start();
+        }
+        coordinator.await();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        ObjectName pattern =
+            new ObjectName("enigma:type=SearchMetrics,name=*");
+        for (ObjectName name : ManagementFactory.getPlatformMBeanServer()
+                 .queryNames(pattern, null)) {
+            assertFalse(name.toString(),
+                        name.getKeyProperty("name").startsWith("\"worker"));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsOtherSearchCheckpoint() throws IOException {
+        File checkpoint = tempFile("enigma-search other 1 1 1\n");
+        new SearchCoordinator(tempFile(CONFIG).getPath(), CIPHERTEXT,
+                              checkpoint);
+    }
+
+}
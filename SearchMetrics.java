@@ -0,0 +1,253 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Live progress of a key search: keys tested, in all and by each thread,
+ *  the best key and score so far, the fraction of the key space covered,
+ *  and an estimate of the time remaining.  The searching threads report
+ *  through tested and offer; the counts are LongAdders, whose cells are
+ *  striped across threads, so that frequent reports from many threads do
+ *  not contend, and the best score is only locked when it improves.
+ *  Progress can be watched as a JMX MBean (see register) and in a
+ *  one-line log written periodically (see startLog).
+ *  @author Josh Rubin
+ */
+class SearchMetrics implements SearchMetricsMBean {
+
+    /** Metrics for a search named NAME of SIZE keys (or an unknown number
+     *  if SIZE is negative), describing keys with DESCRIBE, if it is not
+     *  null. */
+    SearchMetrics(String name, long size, LongFunction<String> describe) {
+        _name = name;
+        _size = size;
+        _describe = describe;
+        _start = System.nanoTime();
+    }
+
+    /** Record that the current thread has tested N more keys. */
+    void tested(long n) {
+        _tested.add(n);
+        _covered.add(n);
+        _threadCount.get().add(n);
+    }
+
+    /** Record that N keys were covered without being tested here, as when
+     *  a search resumes from a checkpoint. */
+    void skipped(long n) {
+        _covered.add(n);
+    }
+
+    /** Record that KEY has score SCORE, keeping it if it is the best so
+     *  far.  Ties go to the smaller key. */
+    void offer(long key, long score) {
+        if (score < _bestScore) {
+            return;
+        }
+        synchronized (this) {
+            if (score > _bestScore
+                || (score == _bestScore && key < _bestKey)) {
+                _bestKey = key;
+                _bestScore = score;
+            }
+        }
+    }
+
+    @Override
+    public long getKeysTested() {
+        return _tested.sum();
+    }
+
+    @Override
+    public double getKeysPerSecond() {
+        return rate(_tested.sum());
+    }
+
+    @Override
+    public String[] getThreadKeysPerSecond() {
+        ArrayList<String> result = new ArrayList<>();
+        for (Map.Entry<String, LongAdder> entry : _threads.entrySet()) {
+            result.add(String.format("%s %.1f", entry.getKey(),
+                                     rate(entry.getValue().sum())));
+        }
+        return result.toArray(new String[0]);
+    }
+
+    @Override
+    public long getBestScore() {
+        return _bestScore;
+    }
+
+    /** Return the best key so far, or -1 if there is none. */
+    synchronized long bestKey() {
+        return _bestKey;
+    }
+
+    @Override
+    public String getBestKey() {
+        long key = bestKey();
+        if (key < 0) {
+            return null;
+        }
+        return _describe == null ? Long.toString(key)
+            : _describe.apply(key);
+    }
+
+    @Override
+    public double getFractionCovered() {
+        return _size < 0 ? Double.NaN
+            : _size == 0 ? 1.0 : (double) _covered.sum() / _size;
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        double rate = getKeysPerSecond();
+        if (_size < 0 || rate <= 0) {
+            return -1;
+        }
+        return (long) Math.ceil(Math.max(0, _size - _covered.sum()) / rate);
+    }
+
+    /** Return the rate in keys per second of N keys tested since the
+     *  start. */
+    private double rate(long n) {
+        double seconds = (System.nanoTime() - _start) / 1e9;
+        return seconds <= 0 ? 0 : n / seconds;
+    }
+
+    /** Register me with the platform MBean server under the name
+     *  "enigma:type=SearchMetrics,name=NAME", replacing any earlier
+     *  registration under that name.  Workers on threads of one JVM may
+     *  register under the same name at once, so registrations are made
+     *  one at a time. */
+    void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (SearchMetrics.class) {
+            try {
+                ObjectName name = objectName();
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(this, name);
+            } catch (JMException excp) {
+                throw error("could not register metrics: %s",
+                            excp.getMessage());
+            }
+        }
+    }
+
+    /** Undo register, and stop any periodic log. */
+    void close() {
+        if (_log != null) {
+            _log.shutdownNow();
+            _log = null;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (SearchMetrics.class) {
+            try {
+                ObjectName name = objectName();
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException excp) {
+                /* Ignore. */
+            }
+        }
+    }
+
+    /** Return the name under which I am registered. */
+    ObjectName objectName() throws JMException {
+        return new ObjectName("enigma:type=SearchMetrics,name="
+                              + ObjectName.quote(_name));
+    }
+
+    /** Write progress() to OUT every PERIOD seconds, on a daemon thread,
+     *  until close is called. */
+    void startLog(PrintStream out, long period) {
+        _log = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, _name + "-progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+        _log.scheduleAtFixedRate(() -> out.println(progress()), period,
+                                 period, TimeUnit.SECONDS);
+    }
+
+    /** Return a one-line summary of progress: keys tested, the fraction
+     *  covered, the aggregate rate and that of each thread, the best
+     *  score and key, and the time remaining. */
+    String progress() {
+        StringBuilder line = new StringBuilder(_name);
+        line.append(String.format(": %d keys", getKeysTested()));
+        double covered = getFractionCovered();
+        if (!Double.isNaN(covered)) {
+            line.append(String.format(" (%.2f%%)", 100 * covered));
+        }
+        line.append(String.format(", %.0f keys/s [", getKeysPerSecond()));
+        String[] threads = getThreadKeysPerSecond();
+        for (int i = 0; i < threads.length; i++) {
+            line.append(i == 0 ? "" : ", ").append(threads[i]);
+        }
+        line.append("]");
+        String best = getBestKey();
+        if (best != null) {
+            line.append(String.format(", best %d at %s", getBestScore(),
+                                      best));
+        }
+        long eta = getEtaSeconds();
+        if (eta >= 0) {
+            line.append(String.format(", ETA %d:%02d:%02d", eta / 3600,
+                                      eta / 60 % 60, eta % 60));
+        }
+        return line.toString();
+    }
+
+    /** Name of the search. */
+    private final String _name;
+
+    /** Number of keys in the search, or -1 if unknown. */
+    private final long _size;
+
+    /** Describer of keys, or null. */
+    private final LongFunction<String> _describe;
+
+    /** Value of System.nanoTime() when the search started. */
+    private final long _start;
+
+    /** Keys tested by this process. */
+    private final LongAdder _tested = new LongAdder();
+
+    /** Keys covered, whether tested here or not. */
+    private final LongAdder _covered = new LongAdder();
+
+    /** Keys tested by each thread, by thread name. */
+    private final ConcurrentHashMap<String, LongAdder> _threads =
+        new ConcurrentHashMap<>();
+
+    /** The entry of _threads of the current thread. */
+    private final ThreadLocal<LongAdder> _threadCount =
+        ThreadLocal.withInitial(() -> _threads.computeIfAbsent(
+            Thread.currentThread().getName(), name -> new LongAdder()));
+
+    /** Best key so far, or -1. */
+    private long _bestKey = -1;
+
+    /** Score of _bestKey, or -1.  Read without locking by offer. */
+    private volatile long _bestScore = -1;
+
+    /** Executor writing the periodic log, or null. */
+    private ScheduledExecutorService _log;
+}
@@ -0,0 +1,32 @@
+package enigma;
+
+/** The management interface through which JMX clients watch a
+ *  SearchMetrics.
+ *  @author Josh Rubin
+ */
+public interface SearchMetricsMBean {
+
+    /** Return the number of keys tested by this process. */
+    long getKeysTested();
+
+    /** Return the keys tested per second since the search started. */
+    double getKeysPerSecond();
+
+    /** Return the keys tested per second by each thread that has tested
+     *  any, as strings of the form "THREAD RATE". */
+    String[] getThreadKeysPerSecond();
+
+    /** Return the best score so far, or -1 if there is none. */
+    long getBestScore();
+
+    /** Return a description of the best key so far, or null. */
+    String getBestKey();
+
+    /** Return the fraction of the key space covered, or NaN if the size
+     *  of the key space is unknown. */
+    double getFractionCovered();
+
+    /** Return the estimated seconds until the key space is covered, or
+     *  -1 if there is no estimate. */
+    long getEtaSeconds();
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+
+/** The suite of all JUnit tests for the SearchMetrics class.
+ *  @author Josh Rubin
+ */
+public class SearchMetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void countsAcrossThreads() throws InterruptedException {
+        SearchMetrics metrics = new SearchMetrics("test", 40000, null);
+        metrics.skipped(8000);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int base = t * 10000;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 8000; i++) {
+                    metrics.tested(1);
+                    metrics.offer(base + i, i);
+                }
+            }, "searcher-" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(32000, metrics.getKeysTested());
+        assertEquals(1.0, metrics.getFractionCovered(), 1e-9);
+        assertEquals(0, metrics.getEtaSeconds());
+        assertEquals(4, metrics.getThreadKeysPerSecond().length);
+        assertEquals(7999, metrics.getBestScore());
+        assertEquals(7999, metrics.bestKey());
+        assertEquals("7999", metrics.getBestKey());
+        assertTrue(metrics.progress().startsWith("test: 32000 keys "
+                                                 + "(100.00%), "));
+    }
+
+    @Test
+    public void unknownSize() {
+        SearchMetrics metrics = new SearchMetrics("open", -1, k -> "key " + k);
+        assertNull(metrics.getBestKey());
+        metrics.tested(5);
+        metrics.offer(3, 10);
+        metrics.offer(1, 10);
+        assertEquals("key 1", metrics.getBestKey());
+        assertTrue(Double.isNaN(metrics.getFractionCovered()));
+        assertEquals(-1, metrics.getEtaSeconds());
+        assertTrue(metrics.progress().contains("best 10 at key 1"));
+    }
+
+    @Test
+    public void registersWithJmx() throws Exception {
+        SearchMetrics metrics = new SearchMetrics("jmx test", 100, null);
+        metrics.tested(25);
+        metrics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(25L, server.getAttribute(metrics.objectName(),
+                                                  "KeysTested"));
+            assertEquals(0.25, (Double) server.getAttribute(
+                             metrics.objectName(), "FractionCovered"),
+                         1e-9);
+        } finally {
+            metrics.close();
+        }
+        assertFalse(server.isRegistered(metrics.objectName()));
+    }
+}
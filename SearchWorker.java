@@ -0,0 +1,175 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import static enigma.EnigmaException.*;
+
+/** A worker in a key search run by a SearchCoordinator.  It connects to
+ *  the coordinator on the local host, receives the configuration and
+ *  ciphertext, and then repeatedly asks for a work unit (a range of keys
+ *  of the configuration's KeySpace) and reports the best key in it, until
+ *  the coordinator says there is no more work.
+ *  @author Josh Rubin
+ */
+class SearchWorker implements Runnable {
+
+    /** A worker for the coordinator listening on local port PORT. */
+    SearchWorker(int port) {
+        this(port, null);
+    }
+
+    /** A worker for the coordinator listening on local port PORT, which
+     *  reads its rotor tables from the RotorTableStore file TABLES, unless
+     *  that is null. */
+    SearchWorker(int port, File tables) {
+        _port = port;
+        _tables = tables;
+    }
+
+    /** Run a worker process for the coordinator listening on the local
+     *  port ARGS[0], using the rotor tables in the RotorTableStore file
+     *  ARGS[1], if present.  Exits with code 1 on errors. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 2) {
+                throw error("usage: SearchWorker PORT [TABLES]");
+            }
+            new SearchWorker(Integer.parseInt(args[0]),
+                             args.length == 2 ? new File(args[1]) : null)
+                .run();
+            return;
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad port %s%n", args[0]);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    @Override
+    public void run() {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        _port);
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(), "UTF-8"));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(),
+                                               true)) {
+            String[] config = expect(in, "CONFIG", 2);
+            String[] text = expect(in, "TEXT", 2);
+            Config configuration = Main.readConfig(config[1]);
+            Machine machine = configuration.newMachine();
+            if (_tables != null) {
+                machine.useStore(RotorTableStore.open(configuration,
+                                                      _tables));
+            }
+            KeySpace keys = new KeySpace(machine);
+            SearchMetrics metrics =
+                new SearchMetrics("worker-" + socket.getLocalPort(), -1,
+                                  keys::describe);
+            metrics.register();
+            try {
+                while (true) {
+                    out.println("NEXT");
+                    String line = in.readLine();
+                    if (line == null || line.equals("DONE")) {
+                        return;
+                    }
+                    String[] unit = line.split(" ");
+                    if (!unit[0].equals("UNIT") || unit.length != 4) {
+                        throw error("unexpected message from coordinator");
+                    }
+                    long[] best = searchRange(machine, keys, text[1],
+                                              Long.parseLong(unit[2]),
+                                              Long.parseLong(unit[3]),
+                                              metrics);
+                    out.printf("RESULT %s %d %d%n", unit[1], best[0],
+                               best[1]);
+                }
+            } finally {
+                metrics.close();
+            }
+        } catch (IOException excp) {
+            throw error("lost connection to coordinator");
+        }
+    }
+
+    /** Read a message from IN and return its words.  The message must
+     *  start with KIND and have LENGTH words. */
+    private static String[] expect(BufferedReader in, String kind,
+                                   int length) throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw error("coordinator closed connection");
+        }
+        String[] words = line.split(" ");
+        if (!words[0].equals(kind) || words.length != length) {
+            throw error("expected %s from coordinator", kind);
+        }
+        return words;
+    }
+
+    /** Return the key K in LO <= K < HI of KEYS under which MACHINE, with
+     *  an empty plugboard, decrypts CIPHERTEXT to the highest-scoring
+     *  text, together with that score, as the array {K, score}.  Ties
+     *  go to the smaller key. */
+    static long[] searchRange(Machine machine, KeySpace keys,
+                              String ciphertext, long lo, long hi) {
+        return searchRange(machine, keys, ciphertext, lo, hi, null);
+    }
+
+    /** As for searchRange(MACHINE, KEYS, CIPHERTEXT, LO, HI), reporting
+     *  each key tested and its score to METRICS, unless it is null. */
+    static long[] searchRange(Machine machine, KeySpace keys,
+                              String ciphertext, long lo, long hi,
+                              SearchMetrics metrics) {
+        machine.setPlugboard(new Permutation("", machine.alphabet()));
+        long[] best = { -1, -1 };
+        int[] positions = new int[machine.numRotors() - 1];
+        int order = -1;
+        for (long key = lo; key < hi; key += 1) {
+            if (keys.order(key) != order) {
+                order = keys.order(key);
+                machine.insertRotors(keys.rotors(key));
+            }
+            machine.setRotors(keys.positions(key, positions));
+            long score = score(machine.convert(ciphertext),
+                               machine.alphabet());
+            if (score > best[1]) {
+                best[0] = key;
+                best[1] = score;
+            }
+            if (metrics != null) {
+                metrics.tested(1);
+                metrics.offer(key, score);
+            }
+        }
+        return best;
+    }
+
+    /** Return the unnormalized index of coincidence of TEXT, a string of
+     *  characters in ALPHABET: the sum of N(N-1) over the number N of
+     *  occurrences of each character. */
+    static long score(String text, Alphabet alphabet) {
+        long[] counts = new long[alphabet.size()];
+        for (int i = 0; i < text.length(); i++) {
+            counts[alphabet.toInt(text.charAt(i))] += 1;
+        }
+        long result = 0;
+        for (long n : counts) {
+            result += n * (n - 1);
+        }
+        return result;
+    }
+
+    /** Port of the coordinator. */
+    private final int _port;
+
+    /** File of shared rotor tables, or null. */
+    private final File _tables;
+}
@@ -0,0 +1,68 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The contents of a setting line: the rotors to insert in a machine,
+ *  their initial positions, and the plugboard.
+ *  @author Josh Rubin
+ */
+class Setting {
+
+    /** A setting that inserts the rotors named ROTORS (ROTORS[0] naming
+     *  the reflector), sets them to POSITIONS, and uses PLUGBOARD. */
+    Setting(String[] rotors, String positions, Permutation plugboard) {
+        _rotors = rotors;
+        _positions = positions;
+        _plugboard = plugboard;
+    }
+
+    /** Return the names of my rotors, reflector first. */
+    String[] rotors() {
+        return _rotors;
+    }
+
+    /** Return the initial positions of my rotors, as for
+     *  Machine.setRotors. */
+    String positions() {
+        return _positions;
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Set up M according to me. */
+    void applyTo(Machine M) {
+        M.setPlugboard(_plugboard);
+        M.insertRotors(_rotors);
+        if (_positions.length() != M.numRotors() - 1) {
+            throw new EnigmaException("I"
+                    + "nitial Positions String incorrect length.");
+        }
+        for (int x = 0; x < _rotors.length; x++) {
+            for (int y = 0; y < x; y++) {
+                if (_rotors[x].equals(_rotors[y])) {
+                    throw new EnigmaException("R"
+                            + "otor repeated in Setting Line.");
+                }
+            }
+        }
+        for (int i = 0; i < _positions.length(); i++) {
+            if (!M.alphabet().contains(_positions.charAt(i))) {
+                throw error("initial position %c not in alphabet",
+                            _positions.charAt(i));
+            }
+        }
+        M.setRotors(_positions);
+    }
+
+    /** Names of my rotors. */
+    private final String[] _rotors;
+
+    /** Initial positions of my rotors. */
+    private final String _positions;
+
+    /** My plugboard. */
+    private final Permutation _plugboard;
+}
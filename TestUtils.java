@@ -39,6 +39,39 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** The name and type-and-notches field of each rotor of the naval
+     *  configuration, in the order of its configuration file. */
+    static final String[][] NAVAL_ROTORS = {
+        { "I", "MQ" }, { "II", "ME" }, { "III", "MV" }, { "IV", "MJ" },
+        { "V", "MZ" }, { "VI", "MZM" }, { "VII", "MZM" }, { "VIII", "MZM" },
+        { "Beta", "N" }, { "Gamma", "N" }, { "B", "R" }, { "C", "R" },
+    };
+
+    /** Return the text of the naval configuration: five slots, three
+     *  pawls, and the rotors of NAVAL_ROTORS wired as in NAVALA.
+     *  OVERRIDES alternates rotor names with the cycles to wire those
+     *  rotors with instead. */
+    static String navalConfig(String... overrides) {
+        HashMap<String, String> cycles = new HashMap<>(NAVALA);
+        if (overrides.length % 2 != 0) {
+            throw new IllegalArgumentException("unpaired override");
+        }
+        for (int i = 0; i < overrides.length; i += 2) {
+            if (!cycles.containsKey(overrides[i])) {
+                throw new IllegalArgumentException("no rotor "
+                                                   + overrides[i]);
+            }
+            cycles.put(overrides[i], overrides[i + 1]);
+        }
+        StringBuilder text = new StringBuilder(UPPER_STRING);
+        text.append("\n5 3\n");
+        for (String[] rotor : NAVAL_ROTORS) {
+            text.append(rotor[0]).append(' ').append(rotor[1]).append(' ')
+                .append(cycles.get(rotor[0])).append('\n');
+        }
+        return text.toString();
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
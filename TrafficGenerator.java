@@ -0,0 +1,268 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Generator of synthetic configurations and inputs for end-to-end
+ *  benchmarks.  Each profile describes a shape of machine: the size of
+ *  its alphabet, its numbers of rotor slots and pawls, and the number of
+ *  rotors in its inventory.  Configurations get random wirings over a
+ *  custom alphabet; inputs alternate setting lines, each with a random
+ *  choice of rotors, positions, and plugboard, with messages whose
+ *  lengths range from a few characters to many lines.
+ *  @author Josh Rubin
+ */
+final class TrafficGenerator {
+
+    /** Characters from which alphabets are drawn, in order: none is a
+     *  lower-case letter (since input is converted to upper case) or is
+     *  special in configuration files. */
+    static final String CHARACTERS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789!#$%&+-./:;<=>?@[]^_{|}~,'\"`";
+
+    /** Named shapes of machine, as {alphabet size, rotor slots, pawls,
+     *  rotors in inventory}. */
+    static final String[] PROFILE_NAMES = { "naval", "wide", "deep" };
+
+    /** Shapes of the profiles named by PROFILE_NAMES. */
+    static final int[][] PROFILES = {
+        {26, 5, 3, 12}, {64, 6, 3, 200}, {36, 12, 8, 60}
+    };
+
+    /** Number of characters on each full line of a message. */
+    private static final int LINE_LENGTH = 60;
+
+    /** Write the configuration and input of profile ARGS[0] to the files
+     *  ARGS[1] and ARGS[2], the input being about ARGS[3] bytes long
+     *  (with an optional suffix K, M, or G), using seed ARGS[4] (default
+     *  0).  Exits with code 1 on errors. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4 || args.length > 5) {
+                throw error("usage: TrafficGenerator PROFILE CONFIG INPUT "
+                            + "SIZE [SEED]");
+            }
+            long seed = args.length > 4 ? parseSeed(args[4]) : 0;
+            generate(profile(args[0]), new File(args[1]), new File(args[2]),
+                     parseSize(args[3]), seed);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the shape of the profile named NAME. */
+    static int[] profile(String name) {
+        for (int i = 0; i < PROFILE_NAMES.length; i++) {
+            if (PROFILE_NAMES[i].equals(name)) {
+                return PROFILES[i];
+            }
+        }
+        throw error("unknown profile %s", name);
+    }
+
+    /** Return the seed denoted by SEED, a decimal number, possibly
+     *  negative. */
+    static long parseSeed(String seed) {
+        try {
+            return Long.parseLong(seed);
+        } catch (NumberFormatException excp) {
+            throw error("bad seed %s", seed);
+        }
+    }
+
+    /** Return the number of bytes denoted by SIZE, a decimal number with
+     *  an optional suffix K, M, or G (powers of 1024). */
+    static long parseSize(String size) {
+        long unit = 1;
+        String digits = size;
+        if (size.endsWith("K") || size.endsWith("M") || size.endsWith("G")) {
+            unit = 1L << (10 * ("KMG".indexOf(size.charAt(size.length() - 1))
+                                + 1));
+            digits = size.substring(0, size.length() - 1);
+        }
+        try {
+            return Long.parseLong(digits) * unit;
+        } catch (NumberFormatException excp) {
+            throw error("bad size %s", size);
+        }
+    }
+
+    /** Write a configuration of shape SHAPE (as in PROFILES) to CONFIG,
+     *  and an input of about SIZE bytes for it to INPUT, choosing at
+     *  random with SEED. */
+    static void generate(int[] shape, File config, File input, long size,
+                         long seed) {
+        Random random = new Random(seed);
+        String alphabet = CHARACTERS.substring(0, shape[0]);
+        try (Writer out = new BufferedWriter(new FileWriter(config))) {
+            writeConfig(random, alphabet, shape[1], shape[2], shape[3], out);
+        } catch (IOException excp) {
+            throw error("could not write %s", config);
+        }
+        try (Writer out = new BufferedWriter(new FileWriter(input))) {
+            writeInput(random, alphabet, shape[1], shape[2], shape[3], size,
+                       out);
+        } catch (IOException excp) {
+            throw error("could not write %s", input);
+        }
+    }
+
+    /** Write to OUT a configuration over ALPHABET with NUMROTORS slots,
+     *  PAWLS pawls, and INVENTORY rotors, chosen at random from RANDOM.
+     *  Rotors are named by rotorName: the inventory holds two reflectors,
+     *  enough non-moving rotors for the slots without pawls, and moving
+     *  rotors for the rest. */
+    static void writeConfig(Random random, String alphabet, int numRotors,
+                            int pawls, int inventory, Writer out)
+        throws IOException {
+        int n = alphabet.length();
+        out.write(String.format("%s%n%d %d%n", alphabet, numRotors, pawls));
+        for (int r = 0; r < inventory; r++) {
+            char kind = kind(r, numRotors, pawls);
+            StringBuilder line = new StringBuilder(rotorName(r));
+            line.append(' ').append(kind);
+            if (kind == 'M') {
+                int notches = 1 + random.nextInt(3);
+                for (int i = 0; i < notches; i++) {
+                    line.append(alphabet.charAt(random.nextInt(n)));
+                }
+            }
+            int[] perm = kind == 'R' ? pairing(random, n, n / 2)
+                : permutation(random, n);
+            line.append(' ').append(cycles(alphabet, perm));
+            out.write(line.toString());
+            out.write(System.lineSeparator());
+        }
+    }
+
+    /** Write to OUT about SIZE bytes of input for a configuration written
+     *  by writeConfig(RANDOM, ALPHABET, NUMROTORS, PAWLS, INVENTORY, ...),
+     *  choosing at random from RANDOM.  Half the messages are short
+     *  (under one line) and the rest up to 100 lines long. */
+    static void writeInput(Random random, String alphabet, int numRotors,
+                           int pawls, int inventory, long size, Writer out)
+        throws IOException {
+        int n = alphabet.length();
+        String newline = System.lineSeparator();
+        long written = 0;
+        StringBuilder line = new StringBuilder();
+        while (written < size) {
+            line.setLength(0);
+            line.append('*');
+            int[] rotors = setting(random, numRotors, pawls, inventory);
+            for (int r : rotors) {
+                line.append(' ').append(rotorName(r));
+            }
+            line.append(' ');
+            for (int i = 1; i < numRotors; i++) {
+                line.append(alphabet.charAt(random.nextInt(n)));
+            }
+            line.append(' ')
+                .append(cycles(alphabet, pairing(random, n,
+                                                 random.nextInt(n / 2 + 1))));
+            line.append(newline);
+            out.write(line.toString());
+            written += line.length();
+            int length = random.nextBoolean() ? 1 + random.nextInt(LINE_LENGTH)
+                : LINE_LENGTH * (1 + random.nextInt(100));
+            for (int start = 0; start < length; start += LINE_LENGTH) {
+                line.setLength(0);
+                int end = Math.min(length, start + LINE_LENGTH);
+                for (int i = start; i < end; i++) {
+                    line.append(alphabet.charAt(random.nextInt(n)));
+                    if ((i + 1) % 5 == 0) {
+                        line.append(' ');
+                    }
+                }
+                line.append(newline);
+                out.write(line.toString());
+                written += line.length();
+            }
+        }
+    }
+
+    /** Return the name of rotor number R of an inventory. */
+    static String rotorName(int r) {
+        return "R" + r;
+    }
+
+    /** Return the kind ('R', 'N', or 'M') of rotor number R in the
+     *  inventory of a configuration with NUMROTORS slots and PAWLS
+     *  pawls. */
+    private static char kind(int r, int numRotors, int pawls) {
+        if (r < 2) {
+            return 'R';
+        } else if (r < 2 + numRotors - 1 - pawls) {
+            return 'N';
+        }
+        return 'M';
+    }
+
+    /** Return a random choice, from RANDOM, of the numbers of the rotors
+     *  for the NUMROTORS slots of a machine with PAWLS pawls, from an
+     *  inventory of INVENTORY written by writeConfig. */
+    private static int[] setting(Random random, int numRotors, int pawls,
+                                 int inventory) {
+        int[] result = new int[numRotors];
+        int fixed = numRotors - 1 - pawls;
+        result[0] = random.nextInt(2);
+        int[] moving = permutation(random, inventory - 2 - fixed);
+        for (int i = 1; i < numRotors; i++) {
+            result[i] = i <= fixed ? 1 + i : 2 + fixed + moving[i - 1 - fixed];
+        }
+        return result;
+    }
+
+    /** Return a random permutation of 0 .. N-1 from RANDOM. */
+    private static int[] permutation(Random random, int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    /** Return a permutation of 0 .. N-1, chosen from RANDOM, that swaps
+     *  PAIRS disjoint pairs and fixes everything else. */
+    private static int[] pairing(Random random, int n, int pairs) {
+        int[] order = permutation(random, n);
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = i;
+        }
+        for (int i = 0; i < pairs; i++) {
+            result[order[2 * i]] = order[2 * i + 1];
+            result[order[2 * i + 1]] = order[2 * i];
+        }
+        return result;
+    }
+
+    /** Return PERM, a permutation of the indices of ALPHABET, in cycle
+     *  notation, leaving out fixed points. */
+    private static String cycles(String alphabet, int[] perm) {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[perm.length];
+        for (int i = 0; i < perm.length; i++) {
+            if (seen[i] || perm[i] == i) {
+                continue;
+            }
+            result.append('(');
+            for (int c = i; !seen[c]; c = perm[c]) {
+                seen[c] = true;
+                result.append(alphabet.charAt(c));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+}
@@ -3,6 +3,8 @@ package enigma;
 import org.junit.Test;
 import ucb.junit.textui;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 import static enigma.TestUtils.*;
 import static org.junit.Assert.*;
 
@@ -73,6 +75,249 @@ public class UnitTest {
         assertEquals(25, machine.convert(24));
     }
 
+    @Test
+    public void testMachineManyStationarySlots() {
+        ArrayList<Rotor> allRotors = new ArrayList<>();
+        allRotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                          UPPER)));
+        allRotors.add(new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), UPPER)));
+        allRotors.add(new FixedRotor("Gamma",
+                new Permutation(NAVALA.get("Gamma"), UPPER)));
+        allRotors.add(new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        allRotors.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        Machine machine = new Machine(UPPER, 5, 1, allRotors);
+        machine.insertRotors(new String[] {"B", "Beta", "Gamma", "III", "I"});
+        machine.setRotors("AXLP");
+        machine.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        assertEquals("MXKTVZIPRPCMXLAWZNYNGJK",
+                     machine.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testEnginesAgree() {
+        int[][] shapes = { {3, 2}, {5, 3}, {10, 9}, {6, 0} };
+        for (int[] shape : shapes) {
+            Machine machine =
+                EngineBenchmark.randomMachine(new Random(shape[0]), UPPER,
+                                              shape[0], shape[1]);
+            String setting = EngineBenchmark.zeroSetting(UPPER, shape[0]);
+            String msg = UPPER_STRING + UPPER_STRING + UPPER_STRING;
+            machine.setEngine(Machine.Engine.WALK);
+            String expected = machine.convert(msg + msg + msg);
+            for (Machine.Engine engine : Machine.Engine.values()) {
+                if (!machine.canUse(engine)) {
+                    continue;
+                }
+                machine.setRotors(setting);
+                machine.setEngine(engine);
+                assertEquals(engine.toString(), expected,
+                             machine.convert(msg) + machine.convert(msg)
+                             + machine.convert(msg));
+            }
+        }
+    }
+
+    @Test
+    public void testComposedEngineAcrossCarries() {
+        Machine machine =
+            EngineBenchmark.randomMachine(new Random(9), UPPER, 6, 5);
+        String msg = randomLetters(new Random(10), 40000);
+        String expected = machine.convert(msg);
+        machine.setRotors("AAAAA");
+        machine.setEngine(Machine.Engine.COMPOSED);
+        String first = machine.convert(msg.substring(0, 20000));
+        machine.setRotors("AAAAA");
+        machine.advance(20000);
+        assertEquals(expected, first
+                     + machine.convert(msg.substring(20000)));
+    }
+
+    @Test
+    public void testTableEngineKeepsRotorsInStep() {
+        Machine machine =
+            EngineBenchmark.randomMachine(new Random(3), UPPER, 5, 3);
+        String msg = UPPER_STRING + UPPER_STRING;
+        String expected = machine.convert(msg + msg);
+        machine.setRotors("AAAA");
+        machine.setEngine(Machine.Engine.TABLE);
+        String first = machine.convert(msg);
+        machine.setEngine(Machine.Engine.WALK);
+        assertEquals(expected, first + machine.convert(msg));
+        assertFalse(EngineBenchmark.randomMachine(new Random(3), UPPER, 7, 6)
+                    .canUse(Machine.Engine.TABLE));
+    }
+
+    @Test
+    public void testKernelKeepsRotorsInStep() {
+        Machine machine =
+            EngineBenchmark.randomMachine(new Random(4), UPPER, 6, 4);
+        String msg = UPPER_STRING + UPPER_STRING + UPPER_STRING;
+        Permutation plugboard = machine.plugboard();
+        String expected = machine.convert(msg + msg + msg);
+        machine.setRotors("AAAAA");
+        machine.setEngine(Machine.Engine.KERNEL);
+        String first = machine.convert(msg);
+        machine.setEngine(Machine.Engine.WALK);
+        String second = machine.convert(msg);
+        machine.setEngine(Machine.Engine.KERNEL);
+        assertEquals(expected, first + second + machine.convert(msg));
+        machine.setPlugboard(new Permutation("(AB)", UPPER));
+        machine.setRotors("AAAAA");
+        assertFalse(first.equals(machine.convert(msg)));
+        machine.setPlugboard(plugboard);
+        machine.setRotors("AAAAA");
+        assertEquals(first, machine.convert(msg));
+    }
+
+    @Test
+    public void testAdvanceMany() {
+        int[][] shapes = { {3, 2}, {5, 3}, {6, 4}, {10, 9}, {4, 1}, {6, 0} };
+        Random random = new Random(48);
+        for (int[] shape : shapes) {
+            Machine machine =
+                EngineBenchmark.randomMachine(random, UPPER, shape[0],
+                                              shape[1]);
+            for (int trial = 0; trial < 20; trial++) {
+                String setting = randomLetters(random, shape[0] - 1);
+                int steps = random.nextInt(3000);
+                machine.setRotors(setting);
+                for (int i = 0; i < steps; i++) {
+                    machine.advance();
+                }
+                String expected = machine.convert(UPPER_STRING);
+                machine.setRotors(setting);
+                machine.advance((long) steps);
+                assertEquals(setting + " + " + steps, expected,
+                             machine.convert(UPPER_STRING));
+            }
+        }
+    }
+
+    @Test
+    public void testConvertRanges() {
+        Machine machine =
+            EngineBenchmark.randomMachine(new Random(6), UPPER, 5, 3);
+        Setting setting =
+            new Setting(new String[] {"R", "S1", "S2", "S3", "S4"}, "QDVE",
+                        machine.plugboard());
+        String text = randomLetters(new Random(7), 20000);
+        setting.applyTo(machine);
+        String expected = machine.convert(text);
+        int[][] ranges = { {19990, 20000}, {0, 3}, {7000, 7200}, {50, 50} };
+        for (Machine.Engine engine : new Machine.Engine[] {
+                Machine.Engine.WALK, Machine.Engine.TABLE,
+                Machine.Engine.KERNEL }) {
+            char[] chars = text.toCharArray();
+            machine.setEngine(engine);
+            machine.convertRanges(setting, chars, ranges);
+            for (int i = 0; i < chars.length; i++) {
+                boolean inRange = i < 3 || i >= 19990
+                    || (i >= 7000 && i < 7200);
+                assertEquals(engine + " at " + i,
+                             inRange ? expected.charAt(i) : text.charAt(i),
+                             chars[i]);
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOverlappingRanges() {
+        Machine machine =
+            EngineBenchmark.randomMachine(new Random(6), UPPER, 5, 3);
+        Setting setting =
+            new Setting(new String[] {"R", "S1", "S2", "S3", "S4"}, "AAAA",
+                        machine.plugboard());
+        machine.convertRanges(setting, new char[100],
+                              new int[][] { {10, 20}, {0, 11} });
+    }
+
+    @Test
+    public void testBadRangesChangeNothing() {
+        Machine machine =
+            EngineBenchmark.randomMachine(new Random(6), UPPER, 5, 3);
+        Setting setting =
+            new Setting(new String[] {"R", "S1", "S2", "S3", "S4"}, "AAAA",
+                        machine.plugboard());
+        machine.setRotors("QDVE");
+        String text = randomLetters(new Random(8), 100);
+        String bad = text.substring(0, 90) + "a" + text.substring(91);
+        int[][][] rangeSets = {
+            { {0, 10}, {80, 95} },
+            { {0, 10}, null },
+            { {0, 10}, {} },
+            { {0, 10}, {20, 30, 40} },
+        };
+        for (int[][] ranges : rangeSets) {
+            char[] chars = bad.toCharArray();
+            try {
+                machine.convertRanges(setting, chars, ranges);
+                fail("no error for " + Arrays.deepToString(ranges));
+            } catch (EnigmaException excp) {
+                assertEquals(bad, new String(chars));
+            }
+        }
+        Machine fresh =
+            EngineBenchmark.randomMachine(new Random(6), UPPER, 5, 3);
+        fresh.setRotors("QDVE");
+        assertEquals(fresh.convert(text), machine.convert(text));
+    }
+
+    /** Return LENGTH random upper-case letters from RANDOM. */
+    private static String randomLetters(Random random, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            result.append(UPPER_STRING.charAt(random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testChooseEngine() {
+        Machine small =
+            EngineBenchmark.randomMachine(new Random(5), UPPER, 5, 3);
+        assertEquals(Machine.Engine.TABLE, small.chooseEngine(1000000, false));
+        assertEquals(Machine.Engine.KERNEL, small.chooseEngine(1000, false));
+        assertEquals(Machine.Engine.KERNEL, small.chooseEngine(-1, false));
+        Machine large =
+            EngineBenchmark.randomMachine(new Random(10), UPPER, 10, 9);
+        assertEquals(Machine.Engine.KERNEL,
+                     large.chooseEngine(Long.MAX_VALUE, false));
+        assertTrue(large.engineReport().startsWith("engine KERNEL for "));
+    }
+
+    @Test
+    public void testChosenTableGivesWay() {
+        String msg = UPPER_STRING + UPPER_STRING;
+        String[] names = {"R", "S1", "S2", "S3", "S4"};
+        Machine machine =
+            EngineBenchmark.randomMachine(new Random(5), UPPER, 5, 3);
+        String expected = machine.convert(msg);
+        machine.setRotors("AAAA");
+        machine.chooseEngine(1000000, false);
+        assertEquals(expected, machine.convert(msg));
+        machine.insertRotors(names);
+        machine.setRotors("AAAA");
+        assertEquals(expected, machine.convert(msg));
+        assertEquals(Machine.Engine.KERNEL, machine.engine());
+        assertTrue(machine.engineReport().contains("switched from TABLE"));
+    }
+
+    @Test
+    public void testCalibratedEngineAgrees() {
+        String msg = UPPER_STRING + UPPER_STRING + UPPER_STRING;
+        Machine machine =
+            EngineBenchmark.randomMachine(new Random(5), UPPER, 5, 3);
+        String expected = machine.convert(msg);
+        machine.setRotors("AAAA");
+        machine.chooseEngine(1000000, true);
+        machine.calibrateEngine();
+        assertTrue(machine.engineReport().contains("calibrated"));
+        assertEquals(expected, machine.convert(msg));
+    }
+
     @Test
     public void testPermutationSize() {
         Permutation perm = new Permutation("(AB)", UPPER);
@@ -87,7 +332,17 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class,
+                          PlugboardOptimizerTest.class,
+                          SearchCoordinatorTest.class, ParserTest.class,
+                          BatchRunnerTest.class, KeySpaceTest.class,
+                          CharacteristicCatalogTest.class,
+                          RotorTableStoreTest.class, PipelineTest.class,
+                          DepthFinderTest.class, MacroBenchmarkTest.class,
+                          SearchMetricsTest.class,
+                          WiringSolverTest.class, MessageArchiveTest.class,
+                          BatchConverterTest.class,
+                          FootprintReportTest.class);
     }
 
 }
@@ -0,0 +1,512 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Solver for the wiring of one rotor of a configuration, given pairs of
+ *  plaintext and ciphertext characters enciphered with known settings and
+ *  the wirings of all the other rotors.  The rotor's name, kind, and
+ *  notches must be known, so that the machine steps as it did.
+ *
+ *  <p>If the unknown rotor W sits in slot U at setting S when a pair is
+ *  enciphered, the known rotors to its right take the plaintext and
+ *  ciphertext characters (through the plugboard) to inputs A - S and
+ *  B - S of slot U, and the known rotors to its left, with the
+ *  reflector, perform an involution L on what leaves it.  Following the
+ *  path through the machine then gives W(B) = M(W(A)), where
+ *  M(V) = L(V - S) + S.  Each pair is thus a constraint that fixes the
+ *  wiring of one of its cells as soon as the other's is chosen.  The
+ *  solver chooses the wiring of one cell at a time, most constrained
+ *  first, propagates each choice through all the constraints on that
+ *  cell, and backtracks as soon as two cells would be wired alike; the
+ *  choices for the first cell are tried on all processors.
+ *  @author Josh Rubin
+ */
+class WiringSolver {
+
+    /** Default largest number of wirings found before giving up. */
+    static final int LIMIT = 100;
+
+    /** A solver for the wiring of the rotor named ROTOR, using MACHINE,
+     *  whose rotors other than ROTOR are all correctly wired. */
+    WiringSolver(Machine machine, String rotor) {
+        _machine = machine;
+        _rotor = rotor;
+        _size = machine.alphabet().size();
+    }
+
+    /** Print a configuration line for the rotor named ARGS[1] of the
+     *  configuration ARGS[0], as recovered from the input file ARGS[2]
+     *  and the output ARGS[3] that Main produces for it.  The rotor's
+     *  wiring in the configuration is ignored.  Reports on the standard
+     *  error how many wirings fit, up to ARGS[4] (default LIMIT), and
+     *  which cells no pair constrains; if more than one wiring fits, one
+     *  line is printed for each.  Exits with code 1 on errors. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4 || args.length > 5) {
+                throw error("usage: WiringSolver CONFIG ROTOR PLAINTEXT "
+                            + "CIPHERTEXT [LIMIT]");
+            }
+            int limit = LIMIT;
+            if (args.length > 4) {
+                try {
+                    limit = Integer.parseInt(args[4]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad limit %s", args[4]);
+                }
+            }
+            long start = System.nanoTime();
+            Config config = Main.readConfig(args[0]);
+            WiringSolver solver = new WiringSolver(config.newMachine(),
+                                                   args[1]);
+            solver.read(Main.getInput(args[2]), Main.getInput(args[3]));
+            List<int[]> found = solver.solve(limit);
+            if (found.isEmpty()) {
+                throw error("no wiring of %s fits the pairs", args[1]);
+            }
+            for (int[] wiring : found) {
+                System.out.println(config.describeRotor(
+                    args[1], solver.permutation(wiring)));
+            }
+            int free = solver.unconstrained();
+            System.err.printf("%d pairs, %d wiring%s%s, %d unconstrained "
+                              + "cell%s, %.1f s%n", solver.pairs(),
+                              found.size(), found.size() == 1 ? "" : "s",
+                              found.size() >= limit ? " (limit)" : "", free,
+                              free == 1 ? "" : "s",
+                              (System.nanoTime() - start) / 1e9);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Add the pairs of characters of PLAINTEXT, in the format of input
+     *  files, and CIPHERTEXT, the output of Main for it.  Whitespace and
+     *  any setting lines in CIPHERTEXT are skipped.  PLAINTEXT may not
+     *  have indicator lines, since the message keys they give depend on
+     *  the wiring sought. */
+    void read(Reader plaintext, Reader ciphertext) {
+        String cipher = letters(ciphertext);
+        int used = 0;
+        Setting day = null;
+        try (BufferedReader in = new BufferedReader(plaintext)) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                String trimmed = line.trim();
+                if (trimmed.startsWith("**")) {
+                    throw error("indicator lines need the wiring sought");
+                } else if (trimmed.startsWith("*")) {
+                    day = new Parser(new StringReader(trimmed.substring(1)),
+                                     "input").setting(_machine);
+                    start(day);
+                } else if (!trimmed.isEmpty()) {
+                    if (day == null) {
+                        throw error("Input doesn't start with Setting");
+                    }
+                    String plain = trimmed.replaceAll("\\s", "")
+                        .toUpperCase();
+                    if (used + plain.length() > cipher.length()) {
+                        throw error("ciphertext shorter than plaintext");
+                    }
+                    add(plain, cipher.substring(used,
+                                                used + plain.length()));
+                    used += plain.length();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read plaintext");
+        }
+        if (used != cipher.length()) {
+            throw error("ciphertext longer than plaintext");
+        }
+    }
+
+    /** Return the characters of the lines of IN other than setting lines,
+     *  without whitespace and in upper case. */
+    private static String letters(Reader in) {
+        StringBuilder result = new StringBuilder();
+        try (BufferedReader lines = new BufferedReader(in)) {
+            for (String line = lines.readLine(); line != null;
+                 line = lines.readLine()) {
+                if (!line.trim().startsWith("*")) {
+                    result.append(line.replaceAll("\\s", "").toUpperCase());
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read ciphertext");
+        }
+        return result.toString();
+    }
+
+    /** Set up my machine according to SETTING, in which my rotor must be
+     *  one of the rotors other than the reflector, ready for add. */
+    void start(Setting setting) {
+        String[] names = setting.rotors();
+        _slots = new Rotor[names.length];
+        _slot = -1;
+        for (int i = 0; i < names.length; i++) {
+            for (Rotor rotor : _machine.allRotors()) {
+                if (names[i].equalsIgnoreCase(rotor.name())) {
+                    _slots[i] = rotor;
+                }
+            }
+            if (_slots[i] == null) {
+                throw error("unknown rotor %s", names[i]);
+            }
+            if (names[i].equalsIgnoreCase(_rotor)) {
+                _slot = i;
+            }
+        }
+        if (_slot < 0) {
+            throw error("rotor %s not in setting", _rotor);
+        } else if (_slot == 0) {
+            throw error("cannot solve for the wiring of a reflector");
+        }
+        setting.applyTo(_machine);
+    }
+
+    /** Add the constraints of the pairs of corresponding characters of
+     *  PLAINTEXT and CIPHERTEXT, enciphered from the machine's current
+     *  position, which they advance. */
+    void add(String plaintext, String ciphertext) {
+        if (_slots == null) {
+            throw error("no setting for pairs");
+        }
+        Alphabet alphabet = _machine.alphabet();
+        for (int i = 0; i < plaintext.length(); i++) {
+            int p = alphabet.toInt(plaintext.charAt(i)),
+                c = alphabet.toInt(ciphertext.charAt(i));
+            if (p < 0 || c < 0) {
+                throw error("'%c' not in alphabet",
+                            p < 0 ? plaintext.charAt(i)
+                            : ciphertext.charAt(i));
+            }
+            _machine.advance();
+            int s = _slots[_slot].setting();
+            int a = (toSlot(_machine.plugboard().permute(p)) + s) % _size,
+                b = (toSlot(_machine.plugboard().permute(c)) + s) % _size;
+            int[] turn = new int[_size], back = new int[_size];
+            for (int v = 0; v < _size; v++) {
+                int x = (v - s + _size) % _size;
+                for (int k = _slot - 1; k >= 0; k--) {
+                    x = _slots[k].convertForward(x);
+                }
+                for (int k = 1; k < _slot; k++) {
+                    x = _slots[k].convertBackward(x);
+                }
+                turn[v] = (x + s) % _size;
+                back[turn[v]] = v;
+            }
+            _a.add(a);
+            _b.add(b);
+            _turns.add(turn);
+            _backs.add(back);
+        }
+    }
+
+    /** Return C after passing through the rotors to the right of my
+     *  rotor, from right to left. */
+    private int toSlot(int c) {
+        for (int k = _slots.length - 1; k > _slot; k--) {
+            c = _slots[k].convertForward(c);
+        }
+        return c;
+    }
+
+    /** Return the number of pairs added. */
+    int pairs() {
+        return _a.size();
+    }
+
+    /** Return the number of cells of the rotor that no pair
+     *  constrains. */
+    int unconstrained() {
+        int free = 0;
+        for (int[] on : incidence()) {
+            if (on.length == 0) {
+                free += 1;
+            }
+        }
+        return free;
+    }
+
+    /** Return up to LIMIT wirings of the rotor that fit all pairs added,
+     *  each as an array giving the image of each cell, in lexicographic
+     *  order.  Pairs enciphered while the rotor stands still all share
+     *  one M, which any relabelling of the wiring that commutes with it
+     *  also satisfies, so a unique answer needs pairs from several of
+     *  its positions.  A single cell that no pair constrains is wired to
+     *  the one contact left; if there are more, their images are -1. */
+    List<int[]> solve(int limit) {
+        int[][] on = incidence();
+        Integer[] order = new Integer[_size];
+        for (int i = 0; i < _size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> on[y].length - on[x].length);
+        ConcurrentLinkedQueue<int[]> found = new ConcurrentLinkedQueue<>();
+        AtomicInteger count = new AtomicInteger();
+        if (pairs() == 0) {
+            return new ArrayList<>();
+        }
+        _cellA = new int[pairs()];
+        _cellB = new int[pairs()];
+        for (int i = 0; i < pairs(); i++) {
+            _cellA[i] = _a.get(i);
+            _cellB[i] = _b.get(i);
+        }
+        int first = order[0];
+        IntStream.range(0, _size).parallel().forEach(v -> {
+            Search search = new Search(on, order, limit, found, count);
+            if (search.assign(first, v)) {
+                search.run();
+            }
+        });
+        ArrayList<int[]> result = new ArrayList<>(found);
+        result.sort(Arrays::compare);
+        while (result.size() > limit) {
+            result.remove(result.size() - 1);
+        }
+        return result;
+    }
+
+    /** Return the permutation given by WIRING, as returned by solve,
+     *  wiring any cells whose images are -1 to the remaining contacts in
+     *  order. */
+    Permutation permutation(int[] wiring) {
+        int[] map = wiring.clone();
+        boolean[] used = new boolean[_size];
+        for (int w : map) {
+            if (w >= 0) {
+                used[w] = true;
+            }
+        }
+        int next = 0;
+        for (int i = 0; i < _size; i++) {
+            if (map[i] < 0) {
+                while (used[next]) {
+                    next += 1;
+                }
+                map[i] = next;
+                used[next] = true;
+            }
+        }
+        return new Permutation(map, _machine.alphabet());
+    }
+
+    /** Return, for each cell, the numbers of the pairs that constrain
+     *  it. */
+    private int[][] incidence() {
+        int[] degree = new int[_size];
+        for (int i = 0; i < pairs(); i++) {
+            degree[_a.get(i)] += 1;
+            if (_b.get(i) != _a.get(i)) {
+                degree[_b.get(i)] += 1;
+            }
+        }
+        int[][] on = new int[_size][];
+        for (int k = 0; k < _size; k++) {
+            on[k] = new int[degree[k]];
+            degree[k] = 0;
+        }
+        for (int i = 0; i < pairs(); i++) {
+            int a = _a.get(i), b = _b.get(i);
+            on[a][degree[a]++] = i;
+            if (b != a) {
+                on[b][degree[b]++] = i;
+            }
+        }
+        return on;
+    }
+
+    /** The state of one thread's depth-first search for wirings. */
+    private class Search {
+
+        /** A search for wirings of the cells in ORDER, using the pairs ON
+         *  each cell, adding up to LIMIT wirings in all to FOUND, whose
+         *  size is in COUNT. */
+        Search(int[][] on, Integer[] order, int limit,
+               ConcurrentLinkedQueue<int[]> found, AtomicInteger count) {
+            _on = on;
+            _order = order;
+            _limit = limit;
+            _found = found;
+            _count = count;
+            Arrays.fill(_wiring, -1);
+            Arrays.fill(_cellOf, -1);
+        }
+
+        /** Wire CELL to contact V and propagate the consequences through
+         *  all constraints, recording each new wiring on the trail.
+         *  Return false if some cell would have to be wired to two
+         *  contacts, or two cells to one. */
+        boolean assign(int cell, int v) {
+            int top = _queued = 0;
+            if (!wire(cell, v)) {
+                return false;
+            }
+            while (top < _queued) {
+                int k = _queue[top++];
+                int w = _wiring[k];
+                for (int i : _on[k]) {
+                    if (k == _cellA[i] && !wire(_cellB[i], _turns.get(i)[w])) {
+                        return false;
+                    }
+                    if (k == _cellB[i] && !wire(_cellA[i], _backs.get(i)[w])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Wire CELL to contact V, queueing it for propagation if it was
+         *  not wired.  Return false if that conflicts with the wiring so
+         *  far. */
+        private boolean wire(int cell, int v) {
+            if (_wiring[cell] == v) {
+                return true;
+            } else if (_wiring[cell] >= 0 || _cellOf[v] >= 0) {
+                return false;
+            }
+            _wiring[cell] = v;
+            _cellOf[v] = cell;
+            _trail[_trailed++] = cell;
+            _queue[_queued++] = cell;
+            return true;
+        }
+
+        /** Undo all wirings made since the trail had length MARK. */
+        private void undo(int mark) {
+            while (_trailed > mark) {
+                int cell = _trail[--_trailed];
+                _cellOf[_wiring[cell]] = -1;
+                _wiring[cell] = -1;
+            }
+        }
+
+        /** Extend the current wiring in every way consistent with the
+         *  constraints, adding each complete wiring to the results. */
+        void run() {
+            if (_count.get() >= _limit) {
+                return;
+            }
+            int cell = -1;
+            for (int k : _order) {
+                if (_wiring[k] < 0 && _on[k].length > 0) {
+                    cell = k;
+                    break;
+                }
+            }
+            if (cell < 0) {
+                record();
+                return;
+            }
+            for (int v = 0; v < _size; v++) {
+                if (_cellOf[v] < 0) {
+                    int mark = _trailed;
+                    if (assign(cell, v)) {
+                        run();
+                    }
+                    undo(mark);
+                }
+            }
+        }
+
+        /** Add the current wiring to the results, wiring a lone
+         *  unconstrained cell to the lone contact left. */
+        private void record() {
+            int[] result = _wiring.clone();
+            int cell = -1, contact = -1, free = 0;
+            for (int k = 0; k < _size; k++) {
+                if (result[k] < 0) {
+                    cell = k;
+                    free += 1;
+                }
+                if (_cellOf[k] < 0) {
+                    contact = k;
+                }
+            }
+            if (free == 1) {
+                result[cell] = contact;
+            }
+            if (_count.getAndIncrement() < _limit) {
+                _found.add(result);
+            }
+        }
+
+        /** Pairs on each cell. */
+        private final int[][] _on;
+
+        /** Cells in the order they are chosen. */
+        private final Integer[] _order;
+
+        /** Largest number of results. */
+        private final int _limit;
+
+        /** Results so far. */
+        private final ConcurrentLinkedQueue<int[]> _found;
+
+        /** Number of results so far, in all threads. */
+        private final AtomicInteger _count;
+
+        /** Contact to which each cell is wired, or -1. */
+        private final int[] _wiring = new int[_size];
+
+        /** Cell wired to each contact, or -1. */
+        private final int[] _cellOf = new int[_size];
+
+        /** Cells in the order they were wired. */
+        private final int[] _trail = new int[_size];
+
+        /** Number of cells on the trail. */
+        private int _trailed;
+
+        /** Cells wired but not yet propagated, from index 0 to
+         *  _queued. */
+        private final int[] _queue = new int[_size];
+
+        /** Number of cells queued by the current assign. */
+        private int _queued;
+    }
+
+    /** Machine whose other rotors are known. */
+    private final Machine _machine;
+
+    /** Name of the rotor whose wiring is sought. */
+    private final String _rotor;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Rotors in each slot of the current setting. */
+    private Rotor[] _slots;
+
+    /** Slot of my rotor in the current setting. */
+    private int _slot;
+
+    /** Cells A and B of each pair (see the class comment). */
+    private final ArrayList<Integer> _a = new ArrayList<>(),
+        _b = new ArrayList<>();
+
+    /** Cells A and B of each pair, as arrays for the search. */
+    private int[] _cellA, _cellB;
+
+    /** Permutation M of each pair (see the class comment), and its
+     *  inverse. */
+    private final ArrayList<int[]> _turns = new ArrayList<>(),
+        _backs = new ArrayList<>();
+}
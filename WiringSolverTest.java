@@ -0,0 +1,140 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the WiringSolver class.
+ *  @author Josh Rubin
+ */
+public class WiringSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a naval configuration with rotor III wired as THIRD. */
+    private Config config(String third) {
+        return new Parser(new StringReader(navalConfig("III", third)),
+                          "test").config();
+    }
+
+    /** Return LENGTH random upper-case letters from RANDOM, on lines of
+     *  60 characters. */
+    private String letters(Random random, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            result.append(UPPER_STRING.charAt(random.nextInt(26)));
+            if (i % 60 == 59 || i == length - 1) {
+                result.append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the output of Main for INPUT on the true naval
+     *  configuration. */
+    private String encipher(String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Main.process(config(NAVALA.get("III")).newMachine(),
+                     new StringReader(input), new PrintStream(bytes));
+        return bytes.toString();
+    }
+
+    /** Return the wirings of III, in its slot of SETTING, recovered from
+     *  the encipherment of LENGTH random letters after SETTING. */
+    private List<int[]> solve(String setting, int length, int limit) {
+        String input = setting + "\n" + letters(new Random(44), length);
+        WiringSolver solver =
+            new WiringSolver(config("").newMachine(), "III");
+        solver.read(new StringReader(input),
+                    new StringReader(encipher(input)));
+        assertEquals(length, solver.pairs());
+        return solver.solve(limit);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void recoversWiring() {
+        for (String setting : new String[] { "* B Beta I II III AXLE (YF)",
+                                             "* B Beta I II III AAAA",
+                                             "* B Beta IV III II QEVZ" }) {
+            List<int[]> found = solve(setting, 300, 10);
+            assertEquals(setting, 1, found.size());
+            WiringSolver solver =
+                new WiringSolver(config("").newMachine(), "III");
+            assertEquals(NAVALA_MAP.get("III"),
+                         cycleString(solver.permutation(found.get(0))));
+        }
+    }
+
+    @Test
+    public void stillRotorLeavesChoices() {
+        assertEquals(10, solve("* B Beta III IV I AXLE", 300, 10).size());
+    }
+
+    @Test
+    public void describesRotor() {
+        Config config = config("");
+        assertEquals("III MV (AB)",
+                     config.describeRotor("III",
+                                          new Permutation("(AB)", UPPER)));
+    }
+
+    @Test
+    public void fewPairsLeaveChoices() {
+        List<int[]> found = solve("* B Beta I II III AAAA", 8, 5);
+        assertEquals(5, found.size());
+    }
+
+    @Test
+    public void severalSettings() {
+        Random random = new Random(7);
+        String input = "* B Beta I III II AAAA\n" + letters(random, 100)
+            + "* B Beta III II I MNOP (AZ)\n" + letters(random, 100)
+            + "* B Beta II I III BBBB (AZ)\n" + letters(random, 100);
+        WiringSolver solver =
+            new WiringSolver(config("").newMachine(), "III");
+        solver.read(new StringReader(input),
+                    new StringReader(encipher(input)));
+        List<int[]> found = solver.solve(10);
+        assertEquals(1, found.size());
+        assertEquals(NAVALA_MAP.get("III"),
+                     cycleString(solver.permutation(found.get(0))));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void indicatorsNeedWiring() {
+        new WiringSolver(config("").newMachine(), "III")
+            .read(new StringReader("* B Beta I II III AAAA\n** ABCD\nAB\n"),
+                  new StringReader("AB\n"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void reflectorIsUnknown() {
+        new WiringSolver(config("").newMachine(), "B")
+            .start(new Setting(new String[] {"B", "Beta", "I", "II", "IV"},
+                               "AAAA", new Permutation("", UPPER)));
+    }
+
+    /** Return the images of A-Z under PERM. */
+    private static String cycleString(Permutation perm) {
+        StringBuilder result = new StringBuilder();
+        for (char c = 'A'; c <= 'Z'; c++) {
+            result.append(perm.permute(c));
+        }
+        return result.toString();
+    }
+}